@@ -0,0 +1,127 @@
+package org.springframework.xd.bus.jms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.PublishSubscribeChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.xd.dirt.integration.bus.serializer.kryo.PojoCodec;
+
+import javax.jms.ConnectionFactory;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a {@code bindProducer} to {@code bindConsumer} stream through the embedded vm://
+ * broker of {@code activemq-config.xml}, optionally with the producer's output also published
+ * to a number of taps. Run with {@code ./gradlew jmh}.
+ *
+ * @since 1.1
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class JmsMessageBusBenchmark {
+    private static final int BATCH = 1000;
+
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    @Param({"1", "4"})
+    public int consumers;
+
+    @Param({"0", "1", "4"})
+    public int taps;
+
+    private ClassPathXmlApplicationContext brokerContext;
+    private JmsMessageBus messageBus;
+    private PublishSubscribeChannel moduleOutputChannel;
+    private byte[] payload;
+    private final Semaphore received = new Semaphore(0);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        brokerContext = new ClassPathXmlApplicationContext("/META-INF/spring-xd/transports/activemq-config.xml");
+        messageBus = new JmsMessageBus(brokerContext.getBean("jmsConnectionFactory", ConnectionFactory.class),
+                new PojoCodec());
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.refresh();
+        messageBus.setApplicationContext(context);
+
+        payload = new byte[payloadSize];
+        new Random(42).nextBytes(payload);
+        MessageHandler counter = new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                received.release();
+            }
+        };
+
+        Properties consumerProperties = new Properties();
+        consumerProperties.setProperty("concurrency", String.valueOf(consumers));
+        DirectChannel moduleInputChannel = new DirectChannel();
+        moduleInputChannel.subscribe(counter);
+        messageBus.bindConsumer("bench.0", moduleInputChannel, consumerProperties);
+        for (int i = 0; i < taps; i++) {
+            DirectChannel tapChannel = new DirectChannel();
+            tapChannel.subscribe(counter);
+            messageBus.bindPubSubConsumer("tap:stream:bench.0", tapChannel, new Properties());
+        }
+
+        // the output channel feeds both the stream and its taps, as a tapped module's would
+        moduleOutputChannel = new PublishSubscribeChannel();
+        messageBus.bindProducer("bench.0", moduleOutputChannel, new Properties());
+        messageBus.bindPubSubProducer("tap:stream:bench.0", moduleOutputChannel, new Properties());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        messageBus.destroy();
+        brokerContext.close();
+    }
+
+    /**
+     * Sends a batch of messages and waits until the consumer and every tap received all of them.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public void throughput() throws InterruptedException {
+        for (int i = 0; i < BATCH; i++) {
+            moduleOutputChannel.send(MessageBuilder.withPayload(payload).build());
+        }
+        received.acquire(BATCH * (1 + taps));
+    }
+
+    /**
+     * Sends one message and waits until the consumer and every tap received it.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency() throws InterruptedException {
+        moduleOutputChannel.send(MessageBuilder.withPayload(payload).build());
+        received.acquire(1 + taps);
+    }
+}
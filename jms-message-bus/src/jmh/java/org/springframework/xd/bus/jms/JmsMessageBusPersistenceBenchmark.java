@@ -0,0 +1,116 @@
+package org.springframework.xd.bus.jms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.xd.dirt.integration.bus.serializer.kryo.PojoCodec;
+
+import javax.jms.ConnectionFactory;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of persistent messages through the non-persistent broker of
+ * {@code activemq-config.xml} and the KahaDB broker of {@code activemq-persistent-config.xml},
+ * with sends from several producer threads so that the journal can batch their writes.
+ *
+ * @since 1.1
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class JmsMessageBusPersistenceBenchmark {
+    private static final int BATCH = 100;
+
+    @Param({"activemq-config.xml", "activemq-persistent-config.xml"})
+    public String brokerConfig;
+
+    @Param({"false", "true"})
+    public boolean batchingEnabled;
+
+    private File dataDir;
+    private ClassPathXmlApplicationContext brokerContext;
+    private JmsMessageBus messageBus;
+    private DirectChannel moduleOutputChannel;
+    private final byte[] payload = new byte[1024];
+    private final Semaphore received = new Semaphore(0);
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataDir = Files.createTempDirectory("xd-jms-bench").toFile();
+        System.setProperty("xd.messagebus.jms.dataDir", dataDir.getAbsolutePath());
+        brokerContext = new ClassPathXmlApplicationContext(
+                new String[] {"/META-INF/spring-xd/transports/" + brokerConfig}, false);
+        PropertySourcesPlaceholderConfigurer placeholderConfigurer = new PropertySourcesPlaceholderConfigurer();
+        placeholderConfigurer.setEnvironment(brokerContext.getEnvironment());
+        brokerContext.addBeanFactoryPostProcessor(placeholderConfigurer);
+        brokerContext.refresh();
+        messageBus = new JmsMessageBus(brokerContext.getBean("jmsConnectionFactory", ConnectionFactory.class),
+                new PojoCodec());
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.refresh();
+        messageBus.setApplicationContext(context);
+
+        Properties consumerProperties = new Properties();
+        consumerProperties.setProperty("concurrency", "4");
+        DirectChannel moduleInputChannel = new DirectChannel();
+        moduleInputChannel.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                received.release();
+            }
+        });
+        messageBus.bindConsumer("durable.0", moduleInputChannel, consumerProperties);
+        Properties producerProperties = new Properties();
+        producerProperties.setProperty("deliveryMode", "persistent");
+        producerProperties.setProperty("batchingEnabled", String.valueOf(batchingEnabled));
+        producerProperties.setProperty("batchSize", String.valueOf(BATCH));
+        producerProperties.setProperty("batchTimeout", "10");
+        moduleOutputChannel = new DirectChannel();
+        messageBus.bindProducer("durable.0", moduleOutputChannel, producerProperties);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        messageBus.destroy();
+        brokerContext.close();
+        FileSystemUtils.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public void persistentThroughput() throws InterruptedException {
+        for (int i = 0; i < BATCH; i++) {
+            moduleOutputChannel.send(MessageBuilder.withPayload(payload).build());
+        }
+        received.acquire(BATCH);
+    }
+}
@@ -0,0 +1,102 @@
+package org.springframework.xd.bus.jms;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.xd.dirt.integration.bus.serializer.kryo.PojoCodec;
+
+import javax.jms.ConnectionFactory;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the round trip latency of a request/reply binding through the embedded vm://
+ * broker of {@code activemq-config.xml}, with eight threads sending requests at once. Each
+ * request carries a semaphore of its thread, which the requestor restores on the reply since
+ * it cannot travel over JMS.
+ *
+ * @since 1.1
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+public class JmsMessageBusRequestReplyBenchmark {
+    private static final String WAITER_HEADER = "waiter";
+
+    private ClassPathXmlApplicationContext brokerContext;
+    private JmsMessageBus messageBus;
+    private DirectChannel requests;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        brokerContext = new ClassPathXmlApplicationContext("/META-INF/spring-xd/transports/activemq-config.xml");
+        messageBus = new JmsMessageBus(brokerContext.getBean("jmsConnectionFactory", ConnectionFactory.class),
+                new PojoCodec());
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.refresh();
+        messageBus.setApplicationContext(context);
+
+        DirectChannel replierRequests = new DirectChannel();
+        final DirectChannel replierReplies = new DirectChannel();
+        replierRequests.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                replierReplies.send(message);
+            }
+        });
+        DirectChannel replies = new DirectChannel();
+        replies.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                ((Semaphore) message.getHeaders().get(WAITER_HEADER)).release();
+            }
+        });
+        Properties properties = new Properties();
+        properties.setProperty("concurrency", "4");
+        messageBus.bindReplier("bench.rr", replierRequests, replierReplies, properties);
+        requests = new DirectChannel();
+        messageBus.bindRequestor("bench.rr", requests, replies, properties);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        messageBus.destroy();
+        brokerContext.close();
+    }
+
+    /**
+     * Sends one request and waits for its reply.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(8)
+    public void roundTrip(Waiter waiter) throws InterruptedException {
+        requests.send(MessageBuilder.withPayload("request").setHeader(WAITER_HEADER, waiter.semaphore).build());
+        waiter.semaphore.acquire();
+    }
+
+    @State(Scope.Thread)
+    public static class Waiter {
+        private final Semaphore semaphore = new Semaphore(0);
+    }
+}
@@ -0,0 +1,199 @@
+package org.springframework.xd.bus.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.endpoint.AbstractEndpoint;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A consumer endpoint that lowers the prefetch of its consumers while the module is slow, so
+ * that a slow instance does not hold on to messages its peers could process, and raises it
+ * again once the module keeps up.
+ * <p>
+ * Every {@code adjustInterval} milliseconds the average time the module took per message over
+ * the interval is compared with the target latency. Above the target the prefetch is halved,
+ * below half of it doubled, within {@code [1, maxPrefetchSize]}. A consumer's prefetch is fixed
+ * when it is created, so a change starts a new listener container with the new prefetch before
+ * shutting down the current one; messages prefetched but not yet delivered by the old consumers
+ * go back to the broker for redelivery. Shutting a container down waits for its listeners to
+ * finish, so it is done on a single thread owned by the endpoint rather than on the shared
+ * scheduler; while a replaced container is still shutting down the prefetch is left as it is, so
+ * there are never more than two containers. Stopping the endpoint waits up to
+ * {@value #SHUTDOWN_TIMEOUT} ms for a pending shutdown.
+ *
+ * @since 1.1
+ */
+public class AdaptivePrefetchEndpoint extends AbstractEndpoint {
+    private static Logger logger = LoggerFactory.getLogger(AdaptivePrefetchEndpoint.class);
+    private static final long SHUTDOWN_TIMEOUT = 10000;
+    private final ListenerContainerFactory containerFactory;
+    private final FlowControlledMessageListener listener;
+    private final int maxPrefetchSize;
+    private final long targetLatencyNanos;
+    private final long adjustInterval;
+    private volatile TaskScheduler scheduler;
+    private volatile ScheduledFuture<?> adjustTask;
+    private volatile DefaultMessageListenerContainer container;
+    private volatile ExecutorService shutdownExecutor;
+    private volatile Future<?> pendingShutdown;
+    private volatile int prefetchSize;
+    private long lastProcessed;
+    private long lastProcessingTimeNanos;
+
+    public AdaptivePrefetchEndpoint(ListenerContainerFactory containerFactory, FlowControlledMessageListener listener,
+                                    int maxPrefetchSize, long targetLatency, long adjustInterval) {
+        Assert.notNull(containerFactory, "containerFactory must not be null");
+        Assert.notNull(listener, "listener must not be null");
+        Assert.isTrue(maxPrefetchSize > 0, "maxPrefetchSize must be greater than 0");
+        Assert.isTrue(targetLatency > 0, "targetLatency must be greater than 0");
+        Assert.isTrue(adjustInterval > 0, "adjustInterval must be greater than 0");
+        this.containerFactory = containerFactory;
+        this.listener = listener;
+        this.maxPrefetchSize = maxPrefetchSize;
+        this.prefetchSize = maxPrefetchSize;
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatency);
+        this.adjustInterval = adjustInterval;
+    }
+
+    public void setScheduler(TaskScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return the prefetch size of the current consumers
+     */
+    public int getPrefetchSize() {
+        return this.prefetchSize;
+    }
+
+    @Override
+    public String getComponentType() {
+        return "jms:message-driven-channel-adapter";
+    }
+
+    @Override
+    protected void doStart() {
+        Assert.state(this.scheduler != null, "a scheduler is required");
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(
+                "jms-bus-prefetch-shutdown-" + getComponentName() + "-");
+        threadFactory.setDaemon(true);
+        this.shutdownExecutor = Executors.newSingleThreadExecutor(threadFactory);
+        this.container = startContainer(this.prefetchSize);
+        this.lastProcessed = this.listener.getProcessed();
+        this.lastProcessingTimeNanos = this.listener.getProcessingTimeNanos();
+        this.adjustTask = this.scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                adjustPrefetch();
+            }
+        }, this.adjustInterval);
+    }
+
+    @Override
+    protected void doStop() {
+        if (this.adjustTask != null) {
+            this.adjustTask.cancel(false);
+            this.adjustTask = null;
+        }
+        ExecutorService shutdownExecutor;
+        synchronized (this) {
+            if (this.container != null) {
+                this.container.shutdown();
+                this.container = null;
+            }
+            shutdownExecutor = this.shutdownExecutor;
+            this.shutdownExecutor = null;
+            this.pendingShutdown = null;
+        }
+        if (shutdownExecutor != null) {
+            shutdownExecutor.shutdown();
+            try {
+                if (!shutdownExecutor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Replaced consumers of {} did not shut down within {} ms", getComponentName(),
+                            SHUTDOWN_TIMEOUT);
+                    shutdownExecutor.shutdownNow();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Compare the module's latency since the last call with the target and recreate the
+     * consumers with a new prefetch if needed.
+     */
+    synchronized void adjustPrefetch() {
+        final DefaultMessageListenerContainer previous = replaceContainer();
+        if (previous != null) {
+            this.pendingShutdown = this.shutdownExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    previous.shutdown();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the container replaced by one with a new prefetch, or {@code null} if the
+     * prefetch stays the same, the endpoint is stopped or the last replaced container is still
+     * shutting down
+     */
+    private DefaultMessageListenerContainer replaceContainer() {
+        long processed = this.listener.getProcessed();
+        long processingTimeNanos = this.listener.getProcessingTimeNanos();
+        long count = processed - this.lastProcessed;
+        long averageNanos = count == 0 ? 0 : (processingTimeNanos - this.lastProcessingTimeNanos) / count;
+        this.lastProcessed = processed;
+        this.lastProcessingTimeNanos = processingTimeNanos;
+        if (count == 0 || this.container == null
+                || (this.pendingShutdown != null && !this.pendingShutdown.isDone())) {
+            return null;
+        }
+        int newPrefetchSize = this.prefetchSize;
+        if (averageNanos > this.targetLatencyNanos) {
+            newPrefetchSize = Math.max(1, this.prefetchSize / 2);
+        }
+        else if (averageNanos < this.targetLatencyNanos / 2) {
+            newPrefetchSize = Math.min(this.maxPrefetchSize, this.prefetchSize * 2);
+        }
+        if (newPrefetchSize != this.prefetchSize) {
+            logger.debug("Average latency {} us; changing prefetch of {} from {} to {}", new Object[] {
+                    TimeUnit.NANOSECONDS.toMicros(averageNanos), getComponentName(), this.prefetchSize,
+                    newPrefetchSize});
+            DefaultMessageListenerContainer previous = this.container;
+            this.container = startContainer(newPrefetchSize);
+            this.prefetchSize = newPrefetchSize;
+            return previous;
+        }
+        return null;
+    }
+
+    private DefaultMessageListenerContainer startContainer(int prefetchSize) {
+        DefaultMessageListenerContainer container = this.containerFactory.createContainer(prefetchSize);
+        container.setMessageListener(this.listener);
+        container.afterPropertiesSet();
+        container.start();
+        return container;
+    }
+
+    /**
+     * Creates a listener container, not yet initialized, for the endpoint's destination with a
+     * given consumer prefetch.
+     */
+    public interface ListenerContainerFactory {
+
+        DefaultMessageListenerContainer createContainer(int prefetchSize);
+    }
+}
@@ -0,0 +1,257 @@
+package org.springframework.xd.bus.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.integration.endpoint.MessageProducerSupport;
+import org.springframework.integration.jms.JmsHeaderMapper;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An inbound endpoint that drains up to {@code batchSize} JMS messages, or as many as arrive
+ * within {@code batchTimeout} milliseconds of the first one, and publishes their payloads as a
+ * single message with a {@link List} payload. The headers of each message, mapped as for a
+ * single message, travel in the {@value #BATCH_HEADERS} header: a list in the same order as the
+ * payloads. Each batch is received in a transacted session and acknowledged with a single commit
+ * once the output channel accepted it.
+ * <p>
+ * If the output channel fails to accept a batch, each of its messages is handed to the
+ * {@link FailedMessageRouter}, which sends it back to the queue for a later attempt or, after
+ * the last one, to the dead letter queue, in the same transaction; the commit then acknowledges
+ * the batch and sends the copies together. Without a router, or for messages it cannot route,
+ * the session is rolled back and the broker redelivers the whole batch.
+ *
+ * @since 1.1
+ */
+public class BatchingJmsInboundEndpoint extends MessageProducerSupport {
+    /**
+     * Header of a batch carrying the headers of its messages, as a list of maps.
+     */
+    public static final String BATCH_HEADERS = "xdBatchHeaders";
+    private static Logger logger = LoggerFactory.getLogger(BatchingJmsInboundEndpoint.class);
+    private static final long RECEIVE_TIMEOUT = 1000;
+    private static final long RECOVERY_INTERVAL = 5000;
+    private final ConnectionFactory connectionFactory;
+    private final Destination destination;
+    private final int batchSize;
+    private final long batchTimeout;
+    private volatile int concurrency = 1;
+    private volatile MessageConverter messageConverter = new SimpleMessageConverter();
+    private final JmsHeaderMapper headerMapper = new SendTimeHeaderMapper(false);
+    private volatile FailedMessageRouter failedMessageRouter;
+    private volatile BindingMetrics metrics;
+    private volatile boolean active;
+    private volatile ExecutorService executorService;
+
+    public BatchingJmsInboundEndpoint(ConnectionFactory connectionFactory, Destination destination, int batchSize,
+                                      long batchTimeout) {
+        Assert.notNull(connectionFactory, "connectionFactory must not be null");
+        Assert.notNull(destination, "destination must not be null");
+        Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+        this.connectionFactory = connectionFactory;
+        this.destination = destination;
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout;
+    }
+
+    /**
+     * Set the number of consumers draining the destination concurrently, each with its own
+     * session.
+     */
+    public void setConcurrency(int concurrency) {
+        Assert.isTrue(concurrency > 0, "concurrency must be greater than 0");
+        this.concurrency = concurrency;
+    }
+
+    public void setMessageConverter(MessageConverter messageConverter) {
+        Assert.notNull(messageConverter, "messageConverter must not be null");
+        this.messageConverter = messageConverter;
+    }
+
+    public void setMetrics(BindingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set the router that retries or dead letters the messages of a batch the output channel
+     * failed to accept.
+     */
+    public void setFailedMessageRouter(FailedMessageRouter failedMessageRouter) {
+        this.failedMessageRouter = failedMessageRouter;
+    }
+
+    @Override
+    public String getComponentType() {
+        return "jms:batching-message-driven-channel-adapter";
+    }
+
+    @Override
+    protected void doStart() {
+        this.active = true;
+        this.executorService = Executors.newFixedThreadPool(this.concurrency,
+                new CustomizableThreadFactory(getComponentName() + "-"));
+        for (int i = 0; i < this.concurrency; i++) {
+            this.executorService.execute(new BatchConsumer());
+        }
+    }
+
+    @Override
+    protected void doStop() {
+        this.active = false;
+        ExecutorService executorService = this.executorService;
+        if (executorService != null) {
+            executorService.shutdown();
+            try {
+                if (!executorService.awaitTermination(RECEIVE_TIMEOUT * 2, TimeUnit.MILLISECONDS)) {
+                    executorService.shutdownNow();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Receive loop for one consumer; reconnects after {@value #RECOVERY_INTERVAL} ms if the
+     * connection fails.
+     */
+    private class BatchConsumer implements Runnable {
+
+        @Override
+        public void run() {
+            while (active) {
+                Connection connection = null;
+                Session session = null;
+                MessageConsumer consumer = null;
+                try {
+                    connection = connectionFactory.createConnection();
+                    session = connection.createSession(true, Session.SESSION_TRANSACTED);
+                    consumer = session.createConsumer(destination);
+                    connection.start();
+                    while (active) {
+                        receiveBatch(session, consumer);
+                    }
+                }
+                catch (JMSException e) {
+                    logger.error("Batch consumer for " + destination + " failed; reconnecting in "
+                            + RECOVERY_INTERVAL + " ms", e);
+                    if (!sleepBeforeRecovery()) {
+                        return;
+                    }
+                }
+                finally {
+                    JmsUtils.closeMessageConsumer(consumer);
+                    JmsUtils.closeSession(session);
+                    JmsUtils.closeConnection(connection, true);
+                }
+            }
+        }
+
+        private void receiveBatch(Session session, MessageConsumer consumer) throws JMSException {
+            Message first = consumer.receive(RECEIVE_TIMEOUT);
+            if (first == null) {
+                return;
+            }
+            BindingMetrics metrics = BatchingJmsInboundEndpoint.this.metrics;
+            List<Message> messages = new ArrayList<Message>(batchSize);
+            List<Object> payloads = new ArrayList<Object>(batchSize);
+            List<Map<String, Object>> headers = new ArrayList<Map<String, Object>>(batchSize);
+            add(first, messages, payloads, headers, metrics);
+            long deadline = System.currentTimeMillis() + batchTimeout;
+            while (payloads.size() < batchSize) {
+                long remaining = deadline - System.currentTimeMillis();
+                Message next = remaining > 0 ? consumer.receive(remaining) : consumer.receiveNoWait();
+                if (next == null) {
+                    break;
+                }
+                add(next, messages, payloads, headers, metrics);
+            }
+            long start = System.nanoTime();
+            try {
+                sendMessage(MessageBuilder.withPayload(payloads).setHeader(BATCH_HEADERS, headers).build());
+            }
+            catch (RuntimeException e) {
+                if (metrics != null) {
+                    metrics.recordError();
+                }
+                handleFailure(session, messages, e);
+                return;
+            }
+            if (metrics != null) {
+                metrics.recordMessages(payloads.size(), System.nanoTime() - start);
+            }
+            session.commit();
+        }
+
+        private void add(Message message, List<Message> messages, List<Object> payloads,
+                         List<Map<String, Object>> headers, BindingMetrics metrics) throws JMSException {
+            if (metrics != null) {
+                MeteringMessageListener.recordReceipt(message, metrics);
+            }
+            messages.add(message);
+            payloads.add(messageConverter.fromMessage(message));
+            headers.add(headerMapper.toHeaders(message));
+        }
+
+        /**
+         * Route the messages of a failed batch through the router and commit, or roll the
+         * batch back if there is no router or it cannot route one of them, discarding the
+         * copies sent so far.
+         */
+        private void handleFailure(Session session, List<Message> messages, RuntimeException cause)
+                throws JMSException {
+            FailedMessageRouter router = failedMessageRouter;
+            if (router != null) {
+                boolean routed = true;
+                try {
+                    for (Message message : messages) {
+                        if (!router.route(message, session, cause)) {
+                            routed = false;
+                            break;
+                        }
+                    }
+                }
+                catch (JMSException e) {
+                    logger.warn("Failed to route the messages of a failed batch", e);
+                    routed = false;
+                }
+                if (routed) {
+                    session.commit();
+                    return;
+                }
+            }
+            logger.error("Failed to publish batch of " + messages.size() + " messages; rolling back", cause);
+            session.rollback();
+        }
+
+        private boolean sleepBeforeRecovery() {
+            try {
+                Thread.sleep(RECOVERY_INTERVAL);
+                return true;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package org.springframework.xd.bus.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.Lifecycle;
+import org.springframework.integration.handler.AbstractMessageHandler;
+import org.springframework.integration.jms.DefaultJmsHeaderMapper;
+import org.springframework.integration.jms.JmsHeaderMapper;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.Assert;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A message handler that sends to a JMS destination in a transacted session and commits every
+ * {@code batchSize} messages, or when the first message of the current batch is
+ * {@code batchTimeout} milliseconds old, whichever comes first.
+ * <p>
+ * The messages of the current batch are retained until it commits; if the commit fails, the
+ * batch is sent once more on a new session before the failure is reported. Stopping the handler
+ * commits any partial batch.
+ *
+ * @since 1.1
+ */
+public class BatchingJmsMessageHandler extends AbstractMessageHandler implements Lifecycle {
+    private static Logger logger = LoggerFactory.getLogger(BatchingJmsMessageHandler.class);
+    private final ConnectionFactory connectionFactory;
+    private final Destination destination;
+    private final int batchSize;
+    private final long batchTimeout;
+    private final TaskScheduler taskScheduler;
+    private final Object batchMonitor = new Object();
+    private final List<Message<?>> batch;
+    private volatile MessageConverter messageConverter = new SimpleMessageConverter();
+    private volatile JmsHeaderMapper headerMapper = new DefaultJmsHeaderMapper();
+    private volatile int deliveryMode = DeliveryMode.PERSISTENT;
+    private volatile int priority = javax.jms.Message.DEFAULT_PRIORITY;
+    private volatile long timeToLive = javax.jms.Message.DEFAULT_TIME_TO_LIVE;
+    private volatile boolean running;
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+    private long batchGeneration;
+
+    public BatchingJmsMessageHandler(ConnectionFactory connectionFactory, Destination destination, int batchSize,
+                                     long batchTimeout, TaskScheduler taskScheduler) {
+        Assert.notNull(connectionFactory, "connectionFactory must not be null");
+        Assert.notNull(destination, "destination must not be null");
+        Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+        Assert.notNull(taskScheduler, "taskScheduler must not be null");
+        this.connectionFactory = connectionFactory;
+        this.destination = destination;
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout;
+        this.taskScheduler = taskScheduler;
+        this.batch = new ArrayList<Message<?>>(batchSize);
+    }
+
+    public void setMessageConverter(MessageConverter messageConverter) {
+        Assert.notNull(messageConverter, "messageConverter must not be null");
+        this.messageConverter = messageConverter;
+    }
+
+    public void setHeaderMapper(JmsHeaderMapper headerMapper) {
+        Assert.notNull(headerMapper, "headerMapper must not be null");
+        this.headerMapper = headerMapper;
+    }
+
+    public void setDeliveryPersistent(boolean deliveryPersistent) {
+        this.deliveryMode = deliveryPersistent ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Set the time in milliseconds after which the broker discards undelivered messages, 0 for
+     * never.
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    @Override
+    public String getComponentType() {
+        return "jms:batching-outbound-channel-adapter";
+    }
+
+    @Override
+    protected void handleMessageInternal(Message<?> message) throws Exception {
+        synchronized (this.batchMonitor) {
+            this.batch.add(message);
+            try {
+                send(message);
+            }
+            catch (JMSException e) {
+                resendBatch(e);
+            }
+            if (this.batch.size() == 1 && this.batchTimeout > 0) {
+                scheduleTimeout(this.batchGeneration);
+            }
+            if (this.batch.size() >= this.batchSize) {
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Commit the current batch, if any.
+     */
+    public void flush() {
+        synchronized (this.batchMonitor) {
+            if (!this.batch.isEmpty()) {
+                commit();
+            }
+        }
+    }
+
+    @Override
+    public void start() {
+        this.running = true;
+    }
+
+    @Override
+    public void stop() {
+        synchronized (this.batchMonitor) {
+            try {
+                flush();
+            }
+            finally {
+                this.running = false;
+                closeSession();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    private void send(Message<?> message) throws JMSException {
+        if (this.session == null) {
+            this.connection = this.connectionFactory.createConnection();
+            this.session = this.connection.createSession(true, Session.SESSION_TRANSACTED);
+            this.producer = this.session.createProducer(this.destination);
+        }
+        javax.jms.Message jmsMessage = this.messageConverter.toMessage(message.getPayload(), this.session);
+        this.headerMapper.fromHeaders(message.getHeaders(), jmsMessage);
+        this.producer.send(jmsMessage, this.deliveryMode, this.priority, this.timeToLive);
+    }
+
+    private void commit() {
+        try {
+            this.session.commit();
+        }
+        catch (JMSException e) {
+            resendBatch(e);
+            try {
+                this.session.commit();
+            }
+            catch (JMSException e2) {
+                failBatch(e2);
+            }
+        }
+        this.batch.clear();
+        this.batchGeneration++;
+    }
+
+    /**
+     * Replay the retained batch on a new session after a send or commit failure.
+     */
+    private void resendBatch(JMSException cause) {
+        logger.warn("Batch of " + this.batch.size() + " messages to " + this.destination
+                + " failed; resending on a new session", cause);
+        closeSession();
+        try {
+            for (Message<?> message : this.batch) {
+                send(message);
+            }
+        }
+        catch (JMSException e) {
+            failBatch(e);
+        }
+    }
+
+    private void failBatch(JMSException cause) {
+        Message<?> last = this.batch.get(this.batch.size() - 1);
+        int lost = this.batch.size();
+        closeSession();
+        this.batch.clear();
+        this.batchGeneration++;
+        throw new MessageDeliveryException(last, "Failed to send batch of " + lost + " messages to "
+                + this.destination, cause);
+    }
+
+    private void scheduleTimeout(final long generation) {
+        this.taskScheduler.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                synchronized (batchMonitor) {
+                    if (generation == batchGeneration && !batch.isEmpty()) {
+                        try {
+                            commit();
+                        }
+                        catch (RuntimeException e) {
+                            logger.error("Failed to commit batch after timeout", e);
+                        }
+                    }
+                }
+            }
+        }, new Date(System.currentTimeMillis() + this.batchTimeout));
+    }
+
+    private void closeSession() {
+        JmsUtils.closeMessageProducer(this.producer);
+        JmsUtils.closeSession(this.session);
+        JmsUtils.closeConnection(this.connection);
+        this.producer = null;
+        this.session = null;
+        this.connection = null;
+    }
+}
@@ -0,0 +1,190 @@
+package org.springframework.xd.bus.jms;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters of a producer or consumer binding, exported over JMX.
+ * <p>
+ * For a producer, {@code messages} counts sends and {@code latency} is the time a send takes;
+ * for a consumer, {@code messages} counts messages handed to the module and {@code latency}
+ * is the time the module takes to accept one. Consumers also record the transit time from the
+ * send timestamp stamped by the producer ({@value #SEND_TIME_HEADER}) and count redeliveries,
+ * retries and messages sent to the dead letter queue.
+ *
+ * @since 1.1
+ */
+@ManagedResource
+public class BindingMetrics {
+    /**
+     * Header carrying the wall clock time, in milliseconds, at which a producer sent a message.
+     */
+    public static final String SEND_TIME_HEADER = "xdSendTime";
+    private static final long RATE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    private final String bindingName;
+    private final StripedCounter messages = new StripedCounter();
+    private final StripedCounter errors = new StripedCounter();
+    private final StripedCounter redeliveries = new StripedCounter();
+    private final StripedCounter retries = new StripedCounter();
+    private final StripedCounter deadLetters = new StripedCounter();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram transitTime = new LatencyHistogram();
+    private final long startTime = System.nanoTime();
+    private final QueueDepthSource queueDepthSource;
+    private long rateSampleTime = startTime;
+    private long rateSampleCount;
+    private double rate;
+
+    /**
+     * @param bindingName the binding, {@code "inbound.<name>"} or {@code "outbound.<name>"}
+     * @param queueDepthSource the source of the binding's queue depth, or {@code null}
+     */
+    public BindingMetrics(String bindingName, QueueDepthSource queueDepthSource) {
+        this.bindingName = bindingName;
+        this.queueDepthSource = queueDepthSource;
+    }
+
+    public void recordMessage(long latencyNanos) {
+        this.messages.increment();
+        this.latency.record(latencyNanos);
+    }
+
+    /**
+     * Record several messages handled together, e.g. a batch published to the module.
+     */
+    public void recordMessages(int count, long latencyNanos) {
+        this.messages.add(count);
+        this.latency.record(latencyNanos);
+    }
+
+    public void recordError() {
+        this.errors.increment();
+    }
+
+    public void recordRedelivery() {
+        this.redeliveries.increment();
+    }
+
+    public void recordRetry() {
+        this.retries.increment();
+    }
+
+    public void recordDeadLetter() {
+        this.deadLetters.increment();
+    }
+
+    /**
+     * Record the transit time of a message stamped with {@value #SEND_TIME_HEADER}.
+     */
+    public void recordTransit(long sendTime) {
+        this.transitTime.record(System.currentTimeMillis() - sendTime);
+    }
+
+    @ManagedAttribute(description = "The binding name")
+    public String getBindingName() {
+        return this.bindingName;
+    }
+
+    @ManagedAttribute(description = "Messages sent or received")
+    public long getMessages() {
+        return this.messages.sum();
+    }
+
+    @ManagedAttribute(description = "Messages per second since the binding was bound")
+    public double getMeanRate() {
+        long elapsed = System.nanoTime() - this.startTime;
+        return elapsed == 0 ? 0 : getMessages() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    @ManagedAttribute(description = "Messages per second over the last interval of at least one second")
+    public synchronized double getRate() {
+        long now = System.nanoTime();
+        if (now - this.rateSampleTime >= RATE_INTERVAL) {
+            long count = getMessages();
+            this.rate = (count - this.rateSampleCount) * (double) TimeUnit.SECONDS.toNanos(1)
+                    / (now - this.rateSampleTime);
+            this.rateSampleCount = count;
+            this.rateSampleTime = now;
+        }
+        return this.rate;
+    }
+
+    @ManagedAttribute(description = "Failed sends, or messages the module failed to accept")
+    public long getErrors() {
+        return this.errors.sum();
+    }
+
+    @ManagedAttribute(description = "Messages received that the broker had delivered before")
+    public long getRedeliveries() {
+        return this.redeliveries.sum();
+    }
+
+    @ManagedAttribute(description = "Failed messages sent back to the queue for another attempt")
+    public long getRetries() {
+        return this.retries.sum();
+    }
+
+    @ManagedAttribute(description = "Messages sent to the dead letter queue after their last attempt")
+    public long getDeadLetters() {
+        return this.deadLetters.sum();
+    }
+
+    @ManagedAttribute(description = "Mean send or processing latency in microseconds")
+    public double getMeanLatencyMicros() {
+        return this.latency.getMean() / 1000;
+    }
+
+    @ManagedAttribute(description = "Median send or processing latency in microseconds")
+    public long getLatencyMicrosP50() {
+        return TimeUnit.NANOSECONDS.toMicros(this.latency.getPercentile(0.5));
+    }
+
+    @ManagedAttribute(description = "99th percentile send or processing latency in microseconds")
+    public long getLatencyMicrosP99() {
+        return TimeUnit.NANOSECONDS.toMicros(this.latency.getPercentile(0.99));
+    }
+
+    @ManagedAttribute(description = "Maximum send or processing latency in microseconds")
+    public long getLatencyMicrosMax() {
+        return TimeUnit.NANOSECONDS.toMicros(this.latency.getMax());
+    }
+
+    @ManagedAttribute(description = "Median time in milliseconds from send to receipt")
+    public long getTransitMillisP50() {
+        return this.transitTime.getPercentile(0.5);
+    }
+
+    @ManagedAttribute(description = "99th percentile time in milliseconds from send to receipt")
+    public long getTransitMillisP99() {
+        return this.transitTime.getPercentile(0.99);
+    }
+
+    @ManagedAttribute(description = "Maximum time in milliseconds from send to receipt")
+    public long getTransitMillisMax() {
+        return this.transitTime.getMax();
+    }
+
+    @ManagedAttribute(description = "Messages waiting on the broker for this binding, or -1 if unknown")
+    public long getQueueDepth() {
+        return this.queueDepthSource == null ? -1 : this.queueDepthSource.getQueueDepth();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: messages=%d, errors=%d, redeliveries=%d, retries=%d, deadLetters=%d, "
+                + "latency us p50=%d p99=%d max=%d, transit ms p50=%d p99=%d max=%d", this.bindingName,
+                getMessages(), getErrors(), getRedeliveries(), getRetries(), getDeadLetters(),
+                getLatencyMicrosP50(), getLatencyMicrosP99(), getLatencyMicrosMax(), getTransitMillisP50(),
+                getTransitMillisP99(), getTransitMillisMax());
+    }
+
+    /**
+     * Supplies the number of messages waiting on the broker for a binding.
+     */
+    public interface QueueDepthSource {
+
+        long getQueueDepth();
+    }
+}
@@ -0,0 +1,99 @@
+package org.springframework.xd.bus.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.SessionCallback;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.util.Assert;
+
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TemporaryQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Queries destination statistics from an ActiveMQ broker running the
+ * {@code statisticsBrokerPlugin}: a message sent to
+ * {@code ActiveMQ.Statistics.Destination.<name>} is answered with a map message of the
+ * destination's counters. Results are cached for {@code cacheTime} milliseconds, so frequent
+ * polling (e.g. by a JMX console) costs at most one round trip per destination and interval.
+ *
+ * @since 1.1
+ */
+public class BrokerStatistics {
+    private static final String STATISTICS_DESTINATION_PREFIX = "ActiveMQ.Statistics.Destination.";
+    private static final long RECEIVE_TIMEOUT = 1000;
+    private static Logger logger = LoggerFactory.getLogger(BrokerStatistics.class);
+    private final JmsTemplate jmsTemplate;
+    private final long cacheTime;
+    private final ConcurrentMap<String, CachedDepth> depths = new ConcurrentHashMap<String, CachedDepth>();
+
+    public BrokerStatistics(JmsTemplate jmsTemplate, long cacheTime) {
+        Assert.notNull(jmsTemplate, "jmsTemplate must not be null");
+        this.jmsTemplate = jmsTemplate;
+        this.cacheTime = cacheTime;
+    }
+
+    /**
+     * @return the number of messages on the queue, or -1 if the broker did not answer
+     */
+    public long getQueueSize(final String queueName) {
+        CachedDepth cached = this.depths.get(queueName);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.time < this.cacheTime) {
+            return cached.size;
+        }
+        long size = query(queueName);
+        this.depths.put(queueName, new CachedDepth(size, now));
+        return size;
+    }
+
+    private long query(final String queueName) {
+        try {
+            return this.jmsTemplate.execute(new SessionCallback<Long>() {
+                @Override
+                public Long doInJms(Session session) throws JMSException {
+                    TemporaryQueue replyQueue = session.createTemporaryQueue();
+                    MessageConsumer consumer = session.createConsumer(replyQueue);
+                    MessageProducer producer = session.createProducer(
+                            session.createQueue(STATISTICS_DESTINATION_PREFIX + queueName));
+                    try {
+                        Message request = session.createMessage();
+                        request.setJMSReplyTo(replyQueue);
+                        producer.send(request);
+                        Message reply = consumer.receive(RECEIVE_TIMEOUT);
+                        if (reply instanceof MapMessage && ((MapMessage) reply).itemExists("size")) {
+                            return ((MapMessage) reply).getLong("size");
+                        }
+                        return -1L;
+                    }
+                    finally {
+                        JmsUtils.closeMessageProducer(producer);
+                        JmsUtils.closeMessageConsumer(consumer);
+                        replyQueue.delete();
+                    }
+                }
+            }, true);
+        }
+        catch (RuntimeException e) {
+            logger.debug("Failed to query statistics of " + queueName, e);
+            return -1;
+        }
+    }
+
+    private static class CachedDepth {
+        private final long size;
+        private final long time;
+
+        private CachedDepth(long size, long time) {
+            this.size = size;
+            this.time = time;
+        }
+    }
+}
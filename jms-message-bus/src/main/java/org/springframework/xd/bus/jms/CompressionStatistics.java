@@ -0,0 +1,92 @@
+package org.springframework.xd.bus.jms;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the payload compression of a producer binding, or for decompression on the
+ * consumer side of the bus.
+ *
+ * @since 1.1
+ */
+public class CompressionStatistics {
+    private final AtomicLong compressedMessages = new AtomicLong();
+    private final AtomicLong uncompressedMessages = new AtomicLong();
+    private final AtomicLong bytesBeforeCompression = new AtomicLong();
+    private final AtomicLong bytesAfterCompression = new AtomicLong();
+    private final AtomicLong compressionTimeNanos = new AtomicLong();
+    private final AtomicLong decompressedMessages = new AtomicLong();
+    private final AtomicLong decompressionTimeNanos = new AtomicLong();
+
+    void recordCompressed(int before, int after, long nanos) {
+        compressedMessages.incrementAndGet();
+        bytesBeforeCompression.addAndGet(before);
+        bytesAfterCompression.addAndGet(after);
+        compressionTimeNanos.addAndGet(nanos);
+    }
+
+    void recordUncompressed() {
+        uncompressedMessages.incrementAndGet();
+    }
+
+    void recordDecompressed(long nanos) {
+        decompressedMessages.incrementAndGet();
+        decompressionTimeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return the number of messages sent compressed
+     */
+    public long getCompressedMessages() {
+        return compressedMessages.get();
+    }
+
+    /**
+     * @return the number of messages sent uncompressed because they were below the threshold
+     */
+    public long getUncompressedMessages() {
+        return uncompressedMessages.get();
+    }
+
+    public long getBytesBeforeCompression() {
+        return bytesBeforeCompression.get();
+    }
+
+    public long getBytesAfterCompression() {
+        return bytesAfterCompression.get();
+    }
+
+    /**
+     * @return compressed size divided by original size for all compressed messages, or 1 if
+     * nothing was compressed yet
+     */
+    public double getCompressionRatio() {
+        long before = bytesBeforeCompression.get();
+        return before == 0 ? 1.0 : (double) bytesAfterCompression.get() / before;
+    }
+
+    /**
+     * @return the time spent compressing, in nanoseconds
+     */
+    public long getCompressionTimeNanos() {
+        return compressionTimeNanos.get();
+    }
+
+    public long getDecompressedMessages() {
+        return decompressedMessages.get();
+    }
+
+    /**
+     * @return the time spent decompressing, in nanoseconds
+     */
+    public long getDecompressionTimeNanos() {
+        return decompressionTimeNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("compressed=%d, uncompressed=%d, ratio=%.3f, compressionTime=%dms, "
+                + "decompressed=%d, decompressionTime=%dms", getCompressedMessages(), getUncompressedMessages(),
+                getCompressionRatio(), compressionTimeNanos.get() / 1000000, getDecompressedMessages(),
+                decompressionTimeNanos.get() / 1000000);
+    }
+}
@@ -0,0 +1,89 @@
+package org.springframework.xd.bus.jms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link PayloadCompressor} using the JDK {@link Deflater}. Each thread reuses its own
+ * deflater, inflater and work buffer.
+ *
+ * @since 1.1
+ */
+public class DeflatePayloadCompressor implements PayloadCompressor {
+    public static final String NAME = "deflate";
+    private static final int CHUNK_SIZE = 8192;
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+    private final ThreadLocal<byte[]> chunks = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[CHUNK_SIZE];
+        }
+    };
+
+    public DeflatePayloadCompressor() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to
+     * {@link Deflater#BEST_COMPRESSION}
+     */
+    public DeflatePayloadCompressor(final int level) {
+        this.deflaters = new ThreadLocal<Deflater>() {
+            @Override
+            protected Deflater initialValue() {
+                return new Deflater(level);
+            }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void compress(byte[] data, int offset, int length, OutputStream out) throws IOException {
+        Deflater deflater = deflaters.get();
+        byte[] chunk = chunks.get();
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int count = deflater.deflate(chunk);
+            out.write(chunk, 0, count);
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] data, int offset, int length) throws IOException {
+        Inflater inflater = inflaters.get();
+        byte[] chunk = chunks.get();
+        inflater.reset();
+        inflater.setInput(data, offset, length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length * 4);
+        try {
+            while (!inflater.finished()) {
+                int count = inflater.inflate(chunk);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated or invalid deflate data");
+                }
+                out.write(chunk, 0, count);
+            }
+        }
+        catch (DataFormatException e) {
+            throw new IOException("Invalid deflate data", e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,185 @@
+package org.springframework.xd.bus.jms;
+
+import org.apache.activemq.ScheduledMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a message the module failed to accept back to its queue for another attempt, or to the
+ * dead letter queue after the last one. The copy sent back carries an {@code AMQ_SCHEDULED_DELAY},
+ * so the broker's scheduler delivers it again after an exponential back off, and the attempt in
+ * the {@value #ATTEMPT_PROPERTY} property; a send time stamped by the producer is moved to the
+ * time the copy is due, so that its transit time does not include the back off. After
+ * {@code maxAttempts} the message is sent to the dead letter queue instead, with the failure in
+ * the {@value #EXCEPTION_PROPERTY} property.
+ * <p>
+ * The copy is sent in the session the message was received in, which must be transacted, so
+ * that the copy and the acknowledgement of the message take effect in the same commit; the
+ * caller commits on success and rolls back when routing fails, leaving the message to broker
+ * redelivery. Retries need the broker's scheduler support and ActiveMQ messages; other messages
+ * are not routed.
+ *
+ * @since 1.1
+ */
+public class FailedMessageRouter {
+    /**
+     * Property carrying the delivery attempt of a retried message, starting at 2.
+     */
+    public static final String ATTEMPT_PROPERTY = "xdAttempt";
+    /**
+     * Property carrying the last failure of a dead lettered message.
+     */
+    public static final String EXCEPTION_PROPERTY = "xdException";
+    private static Logger logger = LoggerFactory.getLogger(FailedMessageRouter.class);
+    private static final String[] SCHEDULER_PROPERTIES = {ScheduledMessage.AMQ_SCHEDULED_ID,
+            ScheduledMessage.AMQ_SCHEDULED_DELAY, ScheduledMessage.AMQ_SCHEDULED_PERIOD,
+            ScheduledMessage.AMQ_SCHEDULED_REPEAT, ScheduledMessage.AMQ_SCHEDULED_CRON};
+    private final Destination retryDestination;
+    private final Destination deadLetterDestination;
+    private final int maxAttempts;
+    private final long initialInterval;
+    private final double multiplier;
+    private final long maxInterval;
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong deadLetters = new AtomicLong();
+    private volatile BindingMetrics metrics;
+
+    /**
+     * @param retryDestination the queue retried messages are sent back to
+     * @param deadLetterDestination the queue messages are sent to after the last attempt
+     * @param maxAttempts the number of delivery attempts, including the first
+     * @param initialInterval the delay in milliseconds before the first retry
+     * @param multiplier the factor by which the delay grows with each retry
+     * @param maxInterval the maximum delay in milliseconds
+     */
+    public FailedMessageRouter(Destination retryDestination, Destination deadLetterDestination, int maxAttempts,
+                               long initialInterval, double multiplier, long maxInterval) {
+        Assert.notNull(retryDestination, "retryDestination must not be null");
+        Assert.notNull(deadLetterDestination, "deadLetterDestination must not be null");
+        Assert.isTrue(maxAttempts > 0, "maxAttempts must be greater than 0");
+        Assert.isTrue(initialInterval >= 0, "initialInterval must not be negative");
+        Assert.isTrue(multiplier >= 1, "multiplier must be at least 1");
+        this.retryDestination = retryDestination;
+        this.deadLetterDestination = deadLetterDestination;
+        this.maxAttempts = maxAttempts;
+        this.initialInterval = initialInterval;
+        this.multiplier = multiplier;
+        this.maxInterval = Math.max(initialInterval, maxInterval);
+    }
+
+    public void setMetrics(BindingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Send a failed message back to its queue or to the dead letter queue through the transacted
+     * session it was received in; the caller then commits the session.
+     *
+     * @return {@code false} if the message cannot be routed, in which case the caller must roll
+     *         the session back for the broker to redeliver it
+     * @throws JMSException if the copy cannot be sent; the caller must roll the session back
+     */
+    public boolean route(Message message, Session session, Exception cause) throws JMSException {
+        if (!(message instanceof ActiveMQMessage)) {
+            return false;
+        }
+        int attempt = message.propertyExists(ATTEMPT_PROPERTY) ? message.getIntProperty(ATTEMPT_PROPERTY) : 1;
+        ActiveMQMessage copy = copyForResend((ActiveMQMessage) message);
+        BindingMetrics metrics = this.metrics;
+        if (attempt < this.maxAttempts) {
+            long delay = getDelay(attempt);
+            copy.setIntProperty(ATTEMPT_PROPERTY, attempt + 1);
+            copy.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY, delay);
+            if (copy.propertyExists(BindingMetrics.SEND_TIME_HEADER)) {
+                copy.setLongProperty(BindingMetrics.SEND_TIME_HEADER, System.currentTimeMillis() + delay);
+            }
+            send(session, this.retryDestination, message, copy);
+            this.retries.incrementAndGet();
+            if (metrics != null) {
+                metrics.recordRetry();
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Retrying message " + message.getJMSMessageID() + " in " + delay + " ms, attempt "
+                        + (attempt + 1) + " of " + this.maxAttempts, cause);
+            }
+        }
+        else {
+            copy.setStringProperty(EXCEPTION_PROPERTY, cause.toString());
+            send(session, this.deadLetterDestination, message, copy);
+            this.deadLetters.incrementAndGet();
+            if (metrics != null) {
+                metrics.recordDeadLetter();
+            }
+            logger.warn("Sent message " + message.getJMSMessageID() + " to the dead letter queue after "
+                    + attempt + " attempts", cause);
+        }
+        return true;
+    }
+
+    /**
+     * Copy a received message so that it can be sent again, without the properties the broker's
+     * scheduler set when it last delivered it.
+     */
+    private ActiveMQMessage copyForResend(ActiveMQMessage message) throws JMSException {
+        ActiveMQMessage copy = (ActiveMQMessage) message.copy();
+        copy.setReadOnlyProperties(false);
+        try {
+            for (String property : SCHEDULER_PROPERTIES) {
+                copy.removeProperty(property);
+            }
+        }
+        catch (IOException e) {
+            JMSException jmsException = new JMSException("Failed to copy message " + message.getJMSMessageID());
+            jmsException.setLinkedException(e);
+            throw jmsException;
+        }
+        return copy;
+    }
+
+    private void send(Session session, Destination destination, Message original, Message copy)
+            throws JMSException {
+        long timeToLive = Message.DEFAULT_TIME_TO_LIVE;
+        if (original.getJMSExpiration() > 0) {
+            timeToLive = Math.max(1, original.getJMSExpiration() - System.currentTimeMillis());
+        }
+        MessageProducer producer = session.createProducer(destination);
+        try {
+            producer.send(copy, original.getJMSDeliveryMode(), original.getJMSPriority(), timeToLive);
+        }
+        finally {
+            producer.close();
+        }
+    }
+
+    /**
+     * @return the delay in milliseconds before the retry following the given attempt
+     */
+    long getDelay(int attempt) {
+        double delay = this.initialInterval * Math.pow(this.multiplier, attempt - 1);
+        return delay >= this.maxInterval ? this.maxInterval : (long) delay;
+    }
+
+    /**
+     * @return the number of messages sent back to the queue for another attempt
+     */
+    public long getRetries() {
+        return this.retries.get();
+    }
+
+    /**
+     * @return the number of messages sent to the dead letter queue
+     */
+    public long getDeadLetters() {
+        return this.deadLetters.get();
+    }
+}
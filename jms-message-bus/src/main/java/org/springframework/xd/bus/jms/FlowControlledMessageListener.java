@@ -0,0 +1,73 @@
+package org.springframework.xd.bus.jms;
+
+import org.springframework.jms.listener.SessionAwareMessageListener;
+import org.springframework.util.Assert;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps the listener of a consumer binding to bound the number of messages handed to the
+ * module at the same time, and to measure how long the module takes to accept each message.
+ * <p>
+ * A listener thread that finds {@code maxInFlight} messages in flight blocks before handing on
+ * its message; meanwhile its consumer stops acknowledging, so the broker stops dispatching to it
+ * once its prefetch is full and sends to other consumers instead. The time measured, and covered
+ * by the in-flight limit, is the duration of the module input channel's {@code send}: the
+ * module's processing for a direct channel, the hand-off for an asynchronous one.
+ *
+ * @since 1.1
+ */
+public class FlowControlledMessageListener implements SessionAwareMessageListener<Message> {
+    private final SessionAwareMessageListener<Message> delegate;
+    private final Semaphore inFlight;
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong processingTimeNanos = new AtomicLong();
+
+    /**
+     * @param delegate the listener publishing to the module
+     * @param maxInFlight the maximum number of messages handed to the module at a time, or 0
+     * for no limit
+     */
+    public FlowControlledMessageListener(SessionAwareMessageListener<Message> delegate, int maxInFlight) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.isTrue(maxInFlight >= 0, "maxInFlight must not be negative");
+        this.delegate = delegate;
+        this.inFlight = maxInFlight > 0 ? new Semaphore(maxInFlight) : null;
+    }
+
+    @Override
+    public void onMessage(Message message, Session session) throws JMSException {
+        if (this.inFlight != null) {
+            this.inFlight.acquireUninterruptibly();
+        }
+        long start = System.nanoTime();
+        try {
+            this.delegate.onMessage(message, session);
+        }
+        finally {
+            this.processingTimeNanos.addAndGet(System.nanoTime() - start);
+            this.processed.incrementAndGet();
+            if (this.inFlight != null) {
+                this.inFlight.release();
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages handed to the module
+     */
+    public long getProcessed() {
+        return this.processed.get();
+    }
+
+    /**
+     * @return the total time spent handing messages to the module, in nanoseconds
+     */
+    public long getProcessingTimeNanos() {
+        return this.processingTimeNanos.get();
+    }
+}
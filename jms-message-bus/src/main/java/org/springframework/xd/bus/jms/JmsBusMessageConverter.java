@@ -0,0 +1,294 @@
+package org.springframework.xd.bus.jms;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.util.ByteSequence;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.xd.dirt.integration.bus.serializer.MultiTypeCodec;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The bus wire format: every payload travels as a {@link BytesMessage} whose
+ * {@value #CONTENT_TYPE_PROPERTY} property tells the receiver how to decode it - {@code b} for
+ * a {@code byte[]} written as is, {@code s} for a UTF-8 encoded {@code String}, or otherwise the
+ * class name of an object encoded with the bus codec. Nothing is Java serialized.
+ * <p>
+ * On the send side objects are encoded into a per-thread buffer that is reused across sends.
+ * On the receive side an ActiveMQ message is decoded straight from the buffer it was received
+ * in; other messages are read into a single array. Messages without the content type property
+ * (e.g. sent by another client) are converted by a {@link SimpleMessageConverter}.
+ * <p>
+ * A converter obtained from {@link #forBinding(PayloadCompressor, int)} compresses encoded
+ * payloads of at least the given size and names the compressor in the
+ * {@value #COMPRESSION_PROPERTY} property; receivers decompress only messages carrying it,
+ * with the compressor of that name. Converters of one bus share their codec, payload type
+ * cache and compressors, but each keeps its own {@link CompressionStatistics}.
+ *
+ * @since 1.1
+ */
+public class JmsBusMessageConverter implements MessageConverter {
+    public static final String CONTENT_TYPE_PROPERTY = "xdct";
+    public static final String COMPRESSION_PROPERTY = "xdz";
+    private static final String BYTES = "b";
+    private static final String STRING = "s";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Send buffers that grew beyond this size are not kept for reuse.
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+    private final MultiTypeCodec<Object> codec;
+    private final SimpleMessageConverter fallbackConverter = new SimpleMessageConverter();
+    private final ConcurrentMap<String, Class<?>> payloadTypes;
+    private final Map<String, PayloadCompressor> compressors;
+    private final ThreadLocal<ReusableByteArrayOutputStream> buffers;
+    private final ThreadLocal<ReusableByteArrayOutputStream> compressionBuffers;
+    private final PayloadCompressor compressor;
+    private final int compressionThreshold;
+    private final CompressionStatistics statistics = new CompressionStatistics();
+    private volatile ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+    public JmsBusMessageConverter(MultiTypeCodec<Object> codec) {
+        Assert.notNull(codec, "codec must not be null");
+        this.codec = codec;
+        this.payloadTypes = new ConcurrentHashMap<String, Class<?>>();
+        this.compressors = new ConcurrentHashMap<String, PayloadCompressor>();
+        this.buffers = new BufferThreadLocal();
+        this.compressionBuffers = new BufferThreadLocal();
+        this.compressor = null;
+        this.compressionThreshold = Integer.MAX_VALUE;
+        registerCompressor(new DeflatePayloadCompressor());
+    }
+
+    private JmsBusMessageConverter(JmsBusMessageConverter parent, PayloadCompressor compressor,
+                                   int compressionThreshold) {
+        this.codec = parent.codec;
+        this.payloadTypes = parent.payloadTypes;
+        this.compressors = parent.compressors;
+        this.buffers = parent.buffers;
+        this.compressionBuffers = parent.compressionBuffers;
+        this.classLoader = parent.classLoader;
+        this.compressor = compressor;
+        this.compressionThreshold = compressionThreshold;
+        if (compressor != null) {
+            registerCompressor(compressor);
+        }
+    }
+
+    /**
+     * Create a converter for a single binding, sharing this converter's codec and compressors.
+     *
+     * @param compressor the compressor for outbound payloads, or {@code null} not to compress
+     * @param compressionThreshold the encoded size in bytes from which payloads are compressed
+     */
+    public JmsBusMessageConverter forBinding(PayloadCompressor compressor, int compressionThreshold) {
+        return new JmsBusMessageConverter(this, compressor, compressionThreshold);
+    }
+
+    /**
+     * Make a compressor available for decompressing received payloads.
+     */
+    public void registerCompressor(PayloadCompressor compressor) {
+        Assert.notNull(compressor, "compressor must not be null");
+        this.compressors.put(compressor.getName(), compressor);
+    }
+
+    public void setClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @return the compression counters of the messages converted by this converter
+     */
+    public CompressionStatistics getStatistics() {
+        return this.statistics;
+    }
+
+    @Override
+    public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+        BytesMessage message = session.createBytesMessage();
+        if (object instanceof byte[]) {
+            byte[] bytes = (byte[]) object;
+            writeBody(message, bytes, bytes.length);
+            message.setStringProperty(CONTENT_TYPE_PROPERTY, BYTES);
+        }
+        else if (object instanceof String) {
+            byte[] bytes = ((String) object).getBytes(UTF_8);
+            writeBody(message, bytes, bytes.length);
+            message.setStringProperty(CONTENT_TYPE_PROPERTY, STRING);
+        }
+        else {
+            ReusableByteArrayOutputStream buffer = buffers.get();
+            try {
+                codec.serialize(object, buffer);
+                writeBody(message, buffer.getBuffer(), buffer.size());
+            }
+            catch (IOException e) {
+                throw new MessageConversionException("Failed to encode payload of type "
+                        + object.getClass().getName(), e);
+            }
+            finally {
+                release(buffers, buffer);
+            }
+            message.setStringProperty(CONTENT_TYPE_PROPERTY, object.getClass().getName());
+        }
+        return message;
+    }
+
+    /**
+     * Write the encoded payload, compressed if this converter compresses and it reaches the
+     * threshold.
+     */
+    private void writeBody(BytesMessage message, byte[] data, int length) throws JMSException {
+        if (compressor == null) {
+            message.writeBytes(data, 0, length);
+            return;
+        }
+        if (length < compressionThreshold) {
+            statistics.recordUncompressed();
+            message.writeBytes(data, 0, length);
+            return;
+        }
+        ReusableByteArrayOutputStream buffer = compressionBuffers.get();
+        try {
+            long start = System.nanoTime();
+            compressor.compress(data, 0, length, buffer);
+            statistics.recordCompressed(length, buffer.size(), System.nanoTime() - start);
+            message.writeBytes(buffer.getBuffer(), 0, buffer.size());
+            message.setStringProperty(COMPRESSION_PROPERTY, compressor.getName());
+        }
+        catch (IOException e) {
+            throw new MessageConversionException("Failed to compress payload with " + compressor.getName(), e);
+        }
+        finally {
+            release(compressionBuffers, buffer);
+        }
+    }
+
+    private void release(ThreadLocal<ReusableByteArrayOutputStream> buffers, ReusableByteArrayOutputStream buffer) {
+        if (buffer.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+            buffers.remove();
+        }
+        else {
+            buffer.reset();
+        }
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws JMSException, MessageConversionException {
+        String contentType = message.getStringProperty(CONTENT_TYPE_PROPERTY);
+        if (contentType == null || !(message instanceof BytesMessage)) {
+            return fallbackConverter.fromMessage(message);
+        }
+        BytesMessage bytesMessage = (BytesMessage) message;
+        String compression = message.getStringProperty(COMPRESSION_PROPERTY);
+        ByteSequence content;
+        if (compression != null) {
+            content = new ByteSequence(decompress(bytesMessage, compression));
+            if (BYTES.equals(contentType)) {
+                return content.data;
+            }
+        }
+        else if (BYTES.equals(contentType)) {
+            return readBody(bytesMessage);
+        }
+        else {
+            content = getContent(bytesMessage);
+        }
+        if (STRING.equals(contentType)) {
+            return new String(content.data, content.offset, content.length, UTF_8);
+        }
+        Class<?> type = resolvePayloadType(contentType);
+        try {
+            InputStream in = new ByteArrayInputStream(content.data, content.offset, content.length);
+            return codec.deserialize(in, type);
+        }
+        catch (IOException e) {
+            throw new MessageConversionException("Failed to decode payload of type " + contentType, e);
+        }
+    }
+
+    private byte[] decompress(BytesMessage message, String compression) throws JMSException {
+        PayloadCompressor decompressor = compressors.get(compression);
+        if (decompressor == null) {
+            throw new MessageConversionException("Unknown payload compression " + compression);
+        }
+        ByteSequence content = getContent(message);
+        try {
+            long start = System.nanoTime();
+            byte[] decompressed = decompressor.decompress(content.data, content.offset, content.length);
+            statistics.recordDecompressed(System.nanoTime() - start);
+            return decompressed;
+        }
+        catch (IOException e) {
+            throw new MessageConversionException("Failed to decompress payload with " + compression, e);
+        }
+    }
+
+    /**
+     * Return the received body; for an uncompressed ActiveMQ message the buffer it was
+     * received in, without copying it.
+     */
+    private ByteSequence getContent(BytesMessage message) throws JMSException {
+        if (message instanceof ActiveMQBytesMessage && !((ActiveMQBytesMessage) message).isCompressed()) {
+            ByteSequence content = ((ActiveMQBytesMessage) message).getContent();
+            if (content != null) {
+                return content;
+            }
+        }
+        return new ByteSequence(readBody(message));
+    }
+
+    private byte[] readBody(BytesMessage message) throws JMSException {
+        byte[] body = new byte[(int) message.getBodyLength()];
+        message.readBytes(body);
+        return body;
+    }
+
+    private Class<?> resolvePayloadType(String className) {
+        Class<?> type = payloadTypes.get(className);
+        if (type == null) {
+            try {
+                type = ClassUtils.forName(className, classLoader);
+            }
+            catch (ClassNotFoundException e) {
+                throw new MessageConversionException("Unknown payload type " + className, e);
+            }
+            payloadTypes.putIfAbsent(className, type);
+        }
+        return type;
+    }
+
+    private static class BufferThreadLocal extends ThreadLocal<ReusableByteArrayOutputStream> {
+
+        @Override
+        protected ReusableByteArrayOutputStream initialValue() {
+            return new ReusableByteArrayOutputStream();
+        }
+    }
+
+    private static class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+
+        private ReusableByteArrayOutputStream() {
+            super(1024);
+        }
+
+        private byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
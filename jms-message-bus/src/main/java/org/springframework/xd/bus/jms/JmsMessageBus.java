@@ -1,17 +1,43 @@
 package org.springframework.xd.bus.jms;
 
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQSession;
+import org.apache.activemq.command.ActiveMQDestination;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.Lifecycle;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.integration.channel.AbstractSubscribableChannel;
+import org.springframework.integration.endpoint.AbstractEndpoint;
 import org.springframework.integration.endpoint.EventDrivenConsumer;
+import org.springframework.integration.handler.AbstractMessageHandler;
 import org.springframework.integration.jms.ChannelPublishingJmsMessageListener;
-import org.springframework.integration.jms.JmsMessageDrivenEndpoint;
+import org.springframework.integration.jms.JmsHeaders;
 import org.springframework.integration.jms.JmsSendingMessageHandler;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.jmx.export.annotation.AnnotationMBeanExporter;
+import org.springframework.jmx.support.RegistrationPolicy;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.connection.SingleConnectionFactory;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.core.SessionCallback;
-import org.springframework.jms.listener.SimpleMessageListenerContainer;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.listener.SessionAwareMessageListener;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
 import org.springframework.messaging.SubscribableChannel;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.util.Assert;
 import org.springframework.xd.dirt.integration.bus.AbstractBusPropertiesAccessor;
 import org.springframework.xd.dirt.integration.bus.Binding;
@@ -19,7 +45,23 @@ import org.springframework.xd.dirt.integration.bus.MessageBusSupport;
 import org.springframework.xd.dirt.integration.bus.serializer.MultiTypeCodec;
 
 import javax.jms.*;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author David Turanski
@@ -27,9 +69,108 @@ import java.util.Properties;
  */
 public class JmsMessageBus extends MessageBusSupport implements DisposableBean {
     private static final String DEFAULT_JMS_PREFIX = "xdbus.";
+    private static final ExpressionParser EXPRESSION_PARSER = new SpelExpressionParser();
+    private static final String JMSX_GROUP_ID = "JMSXGroupID";
+    private static final String PERSISTENT = "persistent";
+    private static final String NON_PERSISTENT = "nonPersistent";
+    private static final String DEAD_LETTER_SUFFIX = ".dlq";
+    private static final long LAZY_START_INTERVAL = 100;
+    /**
+     * How often, in milliseconds, adaptive prefetch consumers compare their latency with the target.
+     */
+    private static final long ADAPTIVE_PREFETCH_INTERVAL = 1000;
+    /**
+     * The prefetch adaptive consumers start with when no {@code prefetchSize} is given; the
+     * broker's default for queue consumers.
+     */
+    private static final int DEFAULT_ADAPTIVE_PREFETCH_SIZE = 1000;
+    private static final String JMX_DOMAIN = "xd.messagebus.jms";
+    private static final int DEFAULT_SCHEDULER_POOL_SIZE = 4;
     private static Logger logger = LoggerFactory.getLogger(JmsMessageBus.class);
     private final ConnectionFactory connectionFactory;
+    private final SingleConnectionFactory consumerConnectionFactory;
+    private volatile boolean shareConsumerConnection = true;
     private final JmsTemplate jmsTemplate;
+    private final ConcurrentMap<String, Destination> destinations = new ConcurrentHashMap<String, Destination>();
+    /**
+     * The name of the reply queue of each requestor, by replies channel; the queue is deleted
+     * when the requestor is unbound.
+     */
+    private final ConcurrentMap<MessageChannel, String> replyQueues = new ConcurrentHashMap<MessageChannel, String>();
+    private volatile int bindingStartupConcurrency = 4;
+    private ThreadPoolTaskExecutor bindingStartupExecutor;
+    private final Set<ConsumerStarter> pendingStarts =
+            Collections.newSetFromMap(new ConcurrentHashMap<ConsumerStarter, Boolean>());
+    private final CachingConnectionFactory producerConnectionFactory;
+    private final JmsBusMessageConverter busMessageConverter;
+    private volatile boolean useBytesMessages = true;
+    private volatile boolean cacheProducerConnections = true;
+    private volatile PayloadCompressor payloadCompressor = new DeflatePayloadCompressor();
+    private final Map<String, CompressionStatistics> compressionStatistics =
+            new ConcurrentHashMap<String, CompressionStatistics>();
+    private final TopicSubscriptionTracker topicSubscriptionTracker;
+    /**
+     * The topic name of each pub/sub consumer binding, by module input channel.
+     */
+    private final ConcurrentMap<MessageChannel, String> pubSubConsumerTopics =
+            new ConcurrentHashMap<MessageChannel, String>();
+    private volatile boolean publishOnlyWhenSubscribed = false;
+    /**
+     * The instances of consumer bindings that co-located producers may deliver to directly, by
+     * name.
+     */
+    private final ConcurrentMap<String, List<LocalConsumer>> localConsumers =
+            new ConcurrentHashMap<String, List<LocalConsumer>>();
+    private volatile int localQueueCapacity = 1000;
+    private final Map<String, BindingMetrics> bindingMetrics = new ConcurrentHashMap<String, BindingMetrics>();
+    private final BrokerStatistics brokerStatistics;
+    private volatile boolean metricsEnabled = true;
+    private volatile AnnotationMBeanExporter mbeanExporter;
+    /**
+     * The connection factories of producer bindings that send asynchronously, by binding name.
+     */
+    private final ConcurrentMap<String, CachingConnectionFactory> asyncProducerConnectionFactories =
+            new ConcurrentHashMap<String, CachingConnectionFactory>();
+    private final Map<String, AtomicLong> sendFailures = new ConcurrentHashMap<String, AtomicLong>();
+    private final Map<String, FailedMessageRouter> failedMessageRouters =
+            new ConcurrentHashMap<String, FailedMessageRouter>();
+    private volatile SendFailureCallback sendFailureCallback = new SendFailureCallback() {
+        @Override
+        public void onSendFailure(String bindingName, Exception cause) {
+            logger.error("Asynchronous send failed for " + bindingName, cause);
+        }
+    };
+    private final ThreadPoolTaskScheduler taskScheduler;
+    /**
+     * Batching producers, kept so that partial batches can be flushed on {@link #stopBindings()};
+     * weakly referenced so that unbound producers can be collected.
+     */
+    private final Set<BatchingJmsMessageHandler> batchingHandlers =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<BatchingJmsMessageHandler, Boolean>()));
+    private volatile int defaultConcurrency = 1;
+    private volatile int defaultMaxConcurrency = 1;
+    private volatile int defaultIdleConsumerLimit = 1;
+    private volatile int defaultIdleTaskExecutionLimit = 1;
+    private volatile int defaultMaxMessagesPerTask = 10;
+    private volatile boolean defaultBatchingEnabled = false;
+    private volatile int defaultBatchSize = 100;
+    private volatile long defaultBatchTimeout = 1000;
+    private volatile long defaultReplyTimeout = 30000;
+    private volatile boolean defaultCompress = false;
+    private volatile int defaultCompressionThreshold = 1024;
+    private volatile String defaultDeliveryMode = PERSISTENT;
+    private volatile int defaultPriority = javax.jms.Message.DEFAULT_PRIORITY;
+    private volatile long defaultTimeToLive = javax.jms.Message.DEFAULT_TIME_TO_LIVE;
+    private volatile boolean defaultAsyncSend = false;
+    private volatile int defaultProducerWindowSize = 1024 * 1024;
+    private volatile int defaultPrefetchSize = -1;
+    private volatile int defaultMaxInFlight = 0;
+    private volatile long defaultTargetLatency = 100;
+    private volatile int defaultMaxAttempts = 1;
+    private volatile long defaultBackOffInitialInterval = 1000;
+    private volatile double defaultBackOffMultiplier = 2.0;
+    private volatile long defaultBackOffMaxInterval = 10000;
+    private volatile boolean defaultLazyStart = false;
 
 
     public JmsMessageBus(ConnectionFactory connectionFactory, MultiTypeCodec<Object> codec) {
@@ -37,120 +178,874 @@ public class JmsMessageBus extends MessageBusSupport implements DisposableBean {
         Assert.notNull(codec, "codec must not be null");
         this.connectionFactory = connectionFactory;
         this.setCodec(codec);
-        this.jmsTemplate = new JmsTemplate(connectionFactory);
+        this.busMessageConverter = new JmsBusMessageConverter(codec);
+        this.consumerConnectionFactory = new SingleConnectionFactory(connectionFactory);
+        this.consumerConnectionFactory.setReconnectOnException(true);
+        this.jmsTemplate = new JmsTemplate(this.consumerConnectionFactory);
+        this.jmsTemplate.setMessageConverter(this.busMessageConverter);
         this.jmsTemplate.afterPropertiesSet();
+        this.producerConnectionFactory = new CachingConnectionFactory(connectionFactory);
+        this.producerConnectionFactory.setCacheProducers(true);
+        this.producerConnectionFactory.setReconnectOnException(true);
+        this.topicSubscriptionTracker = new TopicSubscriptionTracker(connectionFactory);
+        this.brokerStatistics = new BrokerStatistics(this.jmsTemplate, 1000);
+        this.taskScheduler = new ThreadPoolTaskScheduler();
+        this.taskScheduler.setPoolSize(DEFAULT_SCHEDULER_POOL_SIZE);
+        this.taskScheduler.setThreadNamePrefix("jms-bus-scheduler-");
+        this.taskScheduler.afterPropertiesSet();
+    }
+
+    /**
+     * Set whether producer bindings send through a shared, cached connection with pooled
+     * sessions and per-destination producers (the default), or open a new connection, session
+     * and producer for every send.
+     */
+    public void setCacheProducerConnections(boolean cacheProducerConnections) {
+        this.cacheProducerConnections = cacheProducerConnections;
+    }
+
+    /**
+     * Set the number of threads of the scheduler that times out batches and requests, polls
+     * lazily started bindings and adjusts adaptive prefetch; 4 by default.
+     */
+    public void setSchedulerPoolSize(int schedulerPoolSize) {
+        Assert.isTrue(schedulerPoolSize > 0, "schedulerPoolSize must be greater than 0");
+        this.taskScheduler.setPoolSize(schedulerPoolSize);
+    }
+
+    /**
+     * Set whether consumer bindings, destination lookups and broker queries share a single
+     * connection (the default), or each consumer binding opens its own.
+     */
+    public void setShareConsumerConnection(boolean shareConsumerConnection) {
+        this.shareConsumerConnection = shareConsumerConnection;
+    }
+
+    /**
+     * Set the number of threads that start queue consumer bindings in parallel, off the
+     * deploying thread (default 4); 0 starts each binding on the thread that binds it. Must be
+     * set before the first binding.
+     */
+    public void setBindingStartupConcurrency(int bindingStartupConcurrency) {
+        this.bindingStartupConcurrency = bindingStartupConcurrency;
+    }
+
+    /**
+     * Set whether queue consumer bindings, by default, only start consuming once their module
+     * input channel has a subscriber; can be overridden per binding with the {@code lazyStart}
+     * property.
+     */
+    public void setDefaultLazyStart(boolean defaultLazyStart) {
+        this.defaultLazyStart = defaultLazyStart;
+    }
+
+    /**
+     * Set whether producers send payloads as codec-encoded {@link BytesMessage}s (the default),
+     * or convert them with a {@link SimpleMessageConverter} (text, bytes, map or Java serialized
+     * object messages). Consumers decode either format.
+     *
+     * @see JmsBusMessageConverter
+     */
+    public void setUseBytesMessages(boolean useBytesMessages) {
+        this.useBytesMessages = useBytesMessages;
+    }
+
+    /**
+     * Set whether pub/sub producers skip encoding and publishing while their topic has no
+     * subscribers, or always publish (the default). Taps bound on other nodes only count as
+     * subscribers once the broker's advisory arrives, so they miss the messages sent before.
+     *
+     * @see TopicSubscriptionTracker
+     */
+    public void setPublishOnlyWhenSubscribed(boolean publishOnlyWhenSubscribed) {
+        this.publishOnlyWhenSubscribed = publishOnlyWhenSubscribed;
+    }
+
+    /**
+     * Set the number of messages queued in memory for a consumer binding by producers with
+     * {@code directBindingAllowed} in the same JVM; when the queue is full they send through
+     * the broker.
+     */
+    public void setLocalQueueCapacity(int localQueueCapacity) {
+        this.localQueueCapacity = localQueueCapacity;
+    }
+
+    /**
+     * Set whether bindings record {@link BindingMetrics} (the default).
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * Set whether binding metrics are exported to the platform MBean server, as
+     * {@code xd.messagebus.jms:type=Binding,name=<binding name>}.
+     */
+    public synchronized void setJmxEnabled(boolean jmxEnabled) {
+        if (jmxEnabled && this.mbeanExporter == null) {
+            AnnotationMBeanExporter exporter = new AnnotationMBeanExporter();
+            exporter.setServer(ManagementFactory.getPlatformMBeanServer());
+            exporter.setRegistrationPolicy(RegistrationPolicy.REPLACE_EXISTING);
+            this.mbeanExporter = exporter;
+        }
+        else if (!jmxEnabled && this.mbeanExporter != null) {
+            this.mbeanExporter.destroy();
+            this.mbeanExporter = null;
+        }
+    }
+
+    /**
+     * @return the metrics of a binding, {@code "inbound.<name>"} or {@code "outbound.<name>"},
+     * or {@code null} if it is not bound or metrics are disabled
+     */
+    public BindingMetrics getBindingMetrics(String bindingName) {
+        return this.bindingMetrics.get(bindingName);
+    }
+
+    /**
+     * Set the compressor used by bindings with {@code compress} enabled; defaults to a
+     * {@link DeflatePayloadCompressor}. Consumers can decompress payloads of every compressor
+     * set on the bus.
+     */
+    public void setPayloadCompressor(PayloadCompressor payloadCompressor) {
+        Assert.notNull(payloadCompressor, "payloadCompressor must not be null");
+        this.busMessageConverter.registerCompressor(payloadCompressor);
+        this.payloadCompressor = payloadCompressor;
+    }
+
+    /**
+     * Set whether producers compress payloads by default; can be overridden per binding with
+     * the {@code compress} property. Compression requires {@link #setUseBytesMessages
+     * BytesMessages}.
+     */
+    public void setDefaultCompress(boolean defaultCompress) {
+        this.defaultCompress = defaultCompress;
+    }
+
+    /**
+     * Set the default encoded payload size in bytes from which payloads are compressed; can be
+     * overridden per binding with the {@code compressionThreshold} property.
+     */
+    public void setDefaultCompressionThreshold(int defaultCompressionThreshold) {
+        this.defaultCompressionThreshold = defaultCompressionThreshold;
+    }
+
+    /**
+     * Set the default number of messages the broker dispatches to a consumer ahead of
+     * acknowledgement, or -1 for the broker's default; can be overridden per binding with the
+     * {@code prefetchSize} property.
+     */
+    public void setDefaultPrefetchSize(int defaultPrefetchSize) {
+        this.defaultPrefetchSize = defaultPrefetchSize;
+    }
+
+    /**
+     * Set the default maximum number of messages a consumer binding hands to its module at a
+     * time, or 0 for no limit; can be overridden per binding with the {@code maxInFlight}
+     * property.
+     */
+    public void setDefaultMaxInFlight(int defaultMaxInFlight) {
+        this.defaultMaxInFlight = defaultMaxInFlight;
+    }
+
+    /**
+     * Set the default module latency in milliseconds above which adaptive prefetch consumers
+     * lower their prefetch; can be overridden per binding with the {@code targetLatency}
+     * property.
+     */
+    public void setDefaultTargetLatency(long defaultTargetLatency) {
+        this.defaultTargetLatency = defaultTargetLatency;
+    }
+
+    /**
+     * Set the default number of attempts to deliver a message to a queue consumer's module,
+     * including the first, before it is sent to the dead letter queue; can be overridden per
+     * binding with the {@code maxAttempts} property. The default, 1, does not retry and leaves
+     * failed messages to the listener container.
+     */
+    public void setDefaultMaxAttempts(int defaultMaxAttempts) {
+        this.defaultMaxAttempts = defaultMaxAttempts;
+    }
+
+    /**
+     * Set the default delay in milliseconds before a failed message is retried; can be
+     * overridden per binding with the {@code backOffInitialInterval} property.
+     */
+    public void setDefaultBackOffInitialInterval(long defaultBackOffInitialInterval) {
+        this.defaultBackOffInitialInterval = defaultBackOffInitialInterval;
+    }
+
+    /**
+     * Set the default factor by which the retry delay grows with each attempt; can be
+     * overridden per binding with the {@code backOffMultiplier} property.
+     */
+    public void setDefaultBackOffMultiplier(double defaultBackOffMultiplier) {
+        this.defaultBackOffMultiplier = defaultBackOffMultiplier;
+    }
+
+    /**
+     * Set the default maximum retry delay in milliseconds; can be overridden per binding with
+     * the {@code backOffMaxInterval} property.
+     */
+    public void setDefaultBackOffMaxInterval(long defaultBackOffMaxInterval) {
+        this.defaultBackOffMaxInterval = defaultBackOffMaxInterval;
+    }
+
+    /**
+     * @return the number of failed messages a queue consumer binding, {@code "inbound.<name>"},
+     * sent back to its queue for another attempt
+     */
+    public long getRetries(String bindingName) {
+        FailedMessageRouter router = this.failedMessageRouters.get(bindingName);
+        return router == null ? 0 : router.getRetries();
+    }
+
+    /**
+     * @return the number of messages a queue consumer binding, {@code "inbound.<name>"}, sent to
+     * its dead letter queue
+     */
+    public long getDeadLetters(String bindingName) {
+        FailedMessageRouter router = this.failedMessageRouters.get(bindingName);
+        return router == null ? 0 : router.getDeadLetters();
+    }
+
+    /**
+     * Set the default delivery mode of producers, {@code persistent} or {@code nonPersistent};
+     * can be overridden per binding with the {@code deliveryMode} property.
+     */
+    public void setDefaultDeliveryMode(String defaultDeliveryMode) {
+        this.defaultDeliveryMode = defaultDeliveryMode;
+    }
+
+    /**
+     * Set the default JMS priority (0-9) of sent messages; can be overridden per binding with
+     * the {@code priority} property.
+     */
+    public void setDefaultPriority(int defaultPriority) {
+        this.defaultPriority = defaultPriority;
+    }
+
+    /**
+     * Set the default time in milliseconds after which the broker discards undelivered
+     * messages, 0 for never; can be overridden per binding with the {@code timeToLive} property.
+     */
+    public void setDefaultTimeToLive(long defaultTimeToLive) {
+        this.defaultTimeToLive = defaultTimeToLive;
+    }
+
+    /**
+     * Set whether producers send without waiting for the broker's acknowledgement by default;
+     * can be overridden per binding with the {@code asyncSend} property. Only supported with an
+     * ActiveMQ connection factory.
+     */
+    public void setDefaultAsyncSend(boolean defaultAsyncSend) {
+        this.defaultAsyncSend = defaultAsyncSend;
+    }
+
+    /**
+     * Set the default number of bytes an asynchronous producer may send before it waits for
+     * the broker to acknowledge them; can be overridden per binding with the
+     * {@code producerWindowSize} property.
+     */
+    public void setDefaultProducerWindowSize(int defaultProducerWindowSize) {
+        this.defaultProducerWindowSize = defaultProducerWindowSize;
+    }
+
+    /**
+     * Set the callback notified of failed asynchronous sends; by default they are logged.
+     */
+    public void setSendFailureCallback(SendFailureCallback sendFailureCallback) {
+        Assert.notNull(sendFailureCallback, "sendFailureCallback must not be null");
+        this.sendFailureCallback = sendFailureCallback;
+    }
+
+    /**
+     * @return the number of failed asynchronous sends reported for a producer binding,
+     * {@code "outbound.<name>"}
+     */
+    public long getSendFailures(String bindingName) {
+        AtomicLong failures = this.sendFailures.get(bindingName);
+        return failures == null ? 0 : failures.get();
+    }
+
+    /**
+     * Return the compression counters of a binding: the compression of messages sent by the
+     * producer {@code "outbound.<name>"}, or the decompression of messages received by the
+     * consumer {@code "inbound.<name>"}.
+     *
+     * @return the statistics, or {@code null} if no such binding was bound
+     */
+    public CompressionStatistics getCompressionStatistics(String bindingName) {
+        return this.compressionStatistics.get(bindingName);
+    }
 
+    /**
+     * Set the number of sessions pooled on the shared producer connection. This should be at
+     * least the number of threads expected to send concurrently; each cached session keeps
+     * its own producer per destination.
+     */
+    public void setProducerSessionCacheSize(int producerSessionCacheSize) {
+        this.producerConnectionFactory.setSessionCacheSize(producerSessionCacheSize);
+    }
+
+    /**
+     * Set the default number of concurrent consumers for queue bindings; can be overridden
+     * per binding with the {@code concurrency} property.
+     */
+    public void setDefaultConcurrency(int defaultConcurrency) {
+        this.defaultConcurrency = defaultConcurrency;
+    }
+
+    /**
+     * Set the default upper bound for dynamically scaled consumers on queue bindings; can be
+     * overridden per binding with the {@code maxConcurrency} property.
+     */
+    public void setDefaultMaxConcurrency(int defaultMaxConcurrency) {
+        this.defaultMaxConcurrency = defaultMaxConcurrency;
+    }
+
+    /**
+     * Set the default number of idle consumers above {@code concurrency} that are kept
+     * while scaled up; can be overridden per binding with the {@code idleConsumerLimit} property.
+     */
+    public void setDefaultIdleConsumerLimit(int defaultIdleConsumerLimit) {
+        this.defaultIdleConsumerLimit = defaultIdleConsumerLimit;
+    }
+
+    /**
+     * Set the default number of consecutive empty receives after which a surplus consumer is
+     * reaped; can be overridden per binding with the {@code idleTaskExecutionLimit} property.
+     */
+    public void setDefaultIdleTaskExecutionLimit(int defaultIdleTaskExecutionLimit) {
+        this.defaultIdleTaskExecutionLimit = defaultIdleTaskExecutionLimit;
+    }
+
+    /**
+     * Set the default number of messages a consumer task processes before it is rescheduled
+     * (which gives the container a chance to scale down); can be overridden per binding with
+     * the {@code maxMessagesPerTask} property.
+     */
+    public void setDefaultMaxMessagesPerTask(int defaultMaxMessagesPerTask) {
+        this.defaultMaxMessagesPerTask = defaultMaxMessagesPerTask;
+    }
+
+    /**
+     * Set whether queue producers batch their sends in transacted sessions by default; can be
+     * overridden per binding with the {@code batchingEnabled} property.
+     */
+    public void setDefaultBatchingEnabled(boolean defaultBatchingEnabled) {
+        this.defaultBatchingEnabled = defaultBatchingEnabled;
+    }
+
+    /**
+     * Set the default number of messages per committed batch; can be overridden per binding
+     * with the {@code batchSize} property.
+     */
+    public void setDefaultBatchSize(int defaultBatchSize) {
+        this.defaultBatchSize = defaultBatchSize;
+    }
+
+    /**
+     * Set the default time in milliseconds after which a partial batch is committed; can be
+     * overridden per binding with the {@code batchTimeout} property.
+     */
+    public void setDefaultBatchTimeout(long defaultBatchTimeout) {
+        this.defaultBatchTimeout = defaultBatchTimeout;
+    }
+
+    /**
+     * Set the default time in milliseconds a requestor waits for a reply before discarding the
+     * request; can be overridden per binding with the {@code replyTimeout} property.
+     */
+    public void setDefaultReplyTimeout(long defaultReplyTimeout) {
+        this.defaultReplyTimeout = defaultReplyTimeout;
     }
 
     @Override
     public void bindConsumer(final String name, MessageChannel moduleInputChannel, final Properties properties) {
-        logger.info("declaring queue for inbound: {} ", name);
-        Queue queue = jmsTemplate.execute(new SessionCallback<Queue>() {
-            @Override
-            public Queue doInJms(Session session) throws JMSException {
-                return session.createQueue(DEFAULT_JMS_PREFIX + name);
+        JmsPropertiesAccessor accessor = new JmsPropertiesAccessor(properties);
+        int partitionIndex = accessor.getPartitionIndex(-1);
+        String queueName = partitionIndex >= 0 ? name + "-" + partitionIndex : name;
+        logger.info("declaring queue for inbound: {} ", queueName);
+        Queue queue = lookupQueue(queueName);
+        doRegisterConsumer(name, queue, moduleInputChannel, accessor);
+        if (isLocalDeliveryAllowed(accessor)) {
+            LocalConsumer localConsumer = new LocalConsumer(name, moduleInputChannel, this.localQueueCapacity,
+                    accessor.getConcurrency(this.defaultConcurrency));
+            localConsumer.setMetrics(this.bindingMetrics.get("inbound." + name));
+            List<LocalConsumer> instances = this.localConsumers.get(name);
+            if (instances == null) {
+                List<LocalConsumer> created = new CopyOnWriteArrayList<LocalConsumer>();
+                instances = this.localConsumers.putIfAbsent(name, created);
+                if (instances == null) {
+                    instances = created;
+                }
             }
-        });
-
-        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
-        container.setConnectionFactory(connectionFactory);
-        container.setDestination(queue);
-        container.afterPropertiesSet();
-        ChannelPublishingJmsMessageListener channelPublishingJmsMessageListener = new ChannelPublishingJmsMessageListener();
-        channelPublishingJmsMessageListener.setExpectReply(false);
-        channelPublishingJmsMessageListener.setRequestChannel(moduleInputChannel);
-        channelPublishingJmsMessageListener.setBeanFactory(this.getBeanFactory());
-        channelPublishingJmsMessageListener.afterPropertiesSet();
-        JmsMessageDrivenEndpoint endpoint = new JmsMessageDrivenEndpoint(container,channelPublishingJmsMessageListener);
-        endpoint.setBeanFactory(getBeanFactory());
-        endpoint.setBeanName("inbound."+name);
-        endpoint.afterPropertiesSet();
-
-        Binding consumerBinding = Binding.forConsumer(name, endpoint, moduleInputChannel, new AbstractBusPropertiesAccessor(properties) {
+            instances.add(localConsumer);
+        }
+    }
 
-        });
-        addBinding(consumerBinding);
-        consumerBinding.start();
+    /**
+     * Whether producers with {@code directBindingAllowed} may deliver to a consumer binding in
+     * memory. Not for partition or batching consumers, nor for consumers that limit the
+     * messages in flight, adapt their prefetch or start lazily, since the in-memory path does
+     * none of that.
+     */
+    private boolean isLocalDeliveryAllowed(JmsPropertiesAccessor accessor) {
+        return accessor.getPartitionIndex(-1) < 0
+                && !accessor.isBatchingEnabled(false)
+                && accessor.getMaxInFlight(this.defaultMaxInFlight) <= 0
+                && !accessor.isAdaptivePrefetch(false)
+                && !accessor.isLazyStart(this.defaultLazyStart);
     }
 
     @Override
     public void bindPubSubConsumer(final String name, MessageChannel moduleInputChannel, Properties properties) {
         logger.info("declaring topic for inbound: {} ", name);
-        Topic topic = jmsTemplate.execute(new SessionCallback<Topic>() {
-            @Override
-            public Topic doInJms(Session session) throws JMSException {
-                return session.createTopic(DEFAULT_JMS_PREFIX + "topic"+name);
+        Topic topic = lookupTopic(name);
+        doRegisterConsumer(name, topic, moduleInputChannel, new JmsPropertiesAccessor(properties));
+        if (this.pubSubConsumerTopics.putIfAbsent(moduleInputChannel, topicName(name)) == null) {
+            this.topicSubscriptionTracker.addLocalSubscriber(topicName(name));
+        }
+    }
+
+    @Override
+    public void unbindConsumers(String name) {
+        cancelPendingStarts(name, null);
+        List<LocalConsumer> instances = this.localConsumers.remove(name);
+        if (instances != null) {
+            for (LocalConsumer localConsumer : instances) {
+                localConsumer.stop();
             }
-        });
+        }
+        super.unbindConsumers(name);
+        removeMetrics("inbound." + name);
+        this.failedMessageRouters.remove("inbound." + name);
+        for (Map.Entry<MessageChannel, String> entry : this.replyQueues.entrySet()) {
+            if (entry.getValue().startsWith(name + ".replies.")
+                    && this.replyQueues.remove(entry.getKey(), entry.getValue())) {
+                deleteQueue(entry.getValue());
+            }
+        }
+        String topicName = topicName(name);
+        for (Map.Entry<MessageChannel, String> entry : this.pubSubConsumerTopics.entrySet()) {
+            if (entry.getValue().equals(topicName)
+                    && this.pubSubConsumerTopics.remove(entry.getKey(), topicName)) {
+                this.topicSubscriptionTracker.removeLocalSubscriber(topicName);
+            }
+        }
+    }
+
+    @Override
+    public void unbindProducers(String name) {
+        super.unbindProducers(name);
+        removeMetrics("outbound." + name);
+    }
+
+    @Override
+    public void unbindConsumer(String name, MessageChannel channel) {
+        cancelPendingStarts(name, channel);
+        List<LocalConsumer> instances = this.localConsumers.get(name);
+        if (instances != null) {
+            for (LocalConsumer localConsumer : instances) {
+                if (localConsumer.getModuleInputChannel() == channel && instances.remove(localConsumer)) {
+                    localConsumer.stop();
+                }
+            }
+        }
+        super.unbindConsumer(name, channel);
+        if (this.pubSubConsumerTopics.remove(channel, topicName(name))) {
+            this.topicSubscriptionTracker.removeLocalSubscriber(topicName(name));
+        }
+        String replyQueueName = this.replyQueues.remove(channel);
+        if (replyQueueName != null) {
+            deleteQueue(replyQueueName);
+        }
+    }
 
-        SimpleMessageListenerContainer container = new SimpleMessageListenerContainer();
-        container.setConnectionFactory(connectionFactory);
-        container.setDestination(topic);
-        container.afterPropertiesSet();
-        ChannelPublishingJmsMessageListener channelPublishingJmsMessageListener = new ChannelPublishingJmsMessageListener();
-        channelPublishingJmsMessageListener.setExpectReply(false);
-        channelPublishingJmsMessageListener.setRequestChannel(moduleInputChannel);
-        channelPublishingJmsMessageListener.setBeanFactory(this.getBeanFactory());
-        channelPublishingJmsMessageListener.afterPropertiesSet();
-        JmsMessageDrivenEndpoint endpoint = new JmsMessageDrivenEndpoint(container,channelPublishingJmsMessageListener);
+    private void doRegisterConsumer(String name, Destination destination, MessageChannel moduleInputChannel,
+                                    JmsPropertiesAccessor accessor) {
+        MessageConverter converter = createConsumerConverter(name);
+        int prefetchSize = accessor.getPrefetchSize(this.defaultPrefetchSize);
+        int maxInFlight = accessor.getMaxInFlight(this.defaultMaxInFlight);
+        BindingMetrics metrics = createMetrics("inbound." + name,
+                destination instanceof Queue ? queueName((Queue) destination) : null);
+        AbstractEndpoint endpoint;
+        if (accessor.isBatchingEnabled(false)) {
+            BatchingJmsInboundEndpoint batchingEndpoint = createBatchingEndpoint(
+                    withPrefetchSize(destination, prefetchSize), moduleInputChannel, converter, accessor);
+            batchingEndpoint.setMetrics(metrics);
+            if (destination instanceof Queue) {
+                batchingEndpoint.setFailedMessageRouter(
+                        createFailedMessageRouter(name, (Queue) destination, accessor, metrics));
+            }
+            endpoint = batchingEndpoint;
+        }
+        else {
+            ChannelPublishingJmsMessageListener channelPublishingJmsMessageListener = new ChannelPublishingJmsMessageListener();
+            channelPublishingJmsMessageListener.setExpectReply(false);
+            channelPublishingJmsMessageListener.setRequestChannel(moduleInputChannel);
+            channelPublishingJmsMessageListener.setMessageConverter(converter);
+            channelPublishingJmsMessageListener.setHeaderMapper(new SendTimeHeaderMapper(false));
+            channelPublishingJmsMessageListener.setBeanFactory(this.getBeanFactory());
+            channelPublishingJmsMessageListener.afterPropertiesSet();
+            SessionAwareMessageListener<javax.jms.Message> listener = channelPublishingJmsMessageListener;
+            if (metrics != null) {
+                listener = new MeteringMessageListener(listener, metrics);
+            }
+            if (destination instanceof Queue && accessor.getMaxAttempts(this.defaultMaxAttempts) > 1) {
+                listener = new RetryingMessageListener(listener,
+                        createFailedMessageRouter(name, (Queue) destination, accessor, metrics));
+            }
+            if (accessor.isAdaptivePrefetch(false)) {
+                endpoint = createAdaptivePrefetchEndpoint(name, destination,
+                        new FlowControlledMessageListener(listener, maxInFlight),
+                        prefetchSize > 0 ? prefetchSize : DEFAULT_ADAPTIVE_PREFETCH_SIZE, accessor);
+            }
+            else {
+                DefaultMessageListenerContainer container = createListenerContainer(name,
+                        withPrefetchSize(destination, prefetchSize), accessor);
+                container.setMessageListener(maxInFlight > 0
+                        ? new FlowControlledMessageListener(listener, maxInFlight) : listener);
+                endpoint = new MessageListenerContainerEndpoint(container);
+            }
+        }
         endpoint.setBeanFactory(getBeanFactory());
         endpoint.setBeanName("inbound."+name);
         endpoint.afterPropertiesSet();
 
-        Binding consumerBinding = Binding.forConsumer(name, endpoint, moduleInputChannel, new AbstractBusPropertiesAccessor(properties) {
-
-        });
+        Binding consumerBinding = Binding.forConsumer(name, endpoint, moduleInputChannel, accessor);
         addBinding(consumerBinding);
-        consumerBinding.start();
+        if (destination instanceof Topic) {
+            // a tap only receives what is published once it subscribed, so it starts right away
+            consumerBinding.start();
+        }
+        else {
+            startConsumerBinding(name, moduleInputChannel, consumerBinding,
+                    accessor.isLazyStart(this.defaultLazyStart));
+        }
+    }
+
+    /**
+     * Start a queue consumer binding on the binding startup executor; a lazy binding whose
+     * module input channel has no subscriber yet is started once it has one. Until it is
+     * started the binding is tracked, so that unbinding cancels the start or waits for it.
+     */
+    private void startConsumerBinding(String name, MessageChannel moduleInputChannel, Binding binding,
+                                      boolean lazy) {
+        ConsumerStarter starter = new ConsumerStarter(name, moduleInputChannel, binding);
+        this.pendingStarts.add(starter);
+        if (lazy && moduleInputChannel instanceof AbstractSubscribableChannel
+                && ((AbstractSubscribableChannel) moduleInputChannel).getSubscriberCount() == 0) {
+            starter.startWhenSubscribed((AbstractSubscribableChannel) moduleInputChannel);
+        }
+        else {
+            starter.submit();
+        }
+    }
+
+    private void cancelPendingStarts(String name, MessageChannel moduleInputChannel) {
+        for (ConsumerStarter starter : this.pendingStarts) {
+            if (starter.name.equals(name)
+                    && (moduleInputChannel == null || starter.moduleInputChannel == moduleInputChannel)) {
+                starter.cancel();
+            }
+        }
+    }
+
+    private synchronized ThreadPoolTaskExecutor getBindingStartupExecutor() {
+        if (this.bindingStartupExecutor == null && this.bindingStartupConcurrency > 0) {
+            ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+            executor.setCorePoolSize(this.bindingStartupConcurrency);
+            executor.setMaxPoolSize(this.bindingStartupConcurrency);
+            executor.setAllowCoreThreadTimeOut(true);
+            executor.setThreadNamePrefix("jms-bus-binding-");
+            executor.afterPropertiesSet();
+            this.bindingStartupExecutor = executor;
+        }
+        return this.bindingStartupExecutor;
+    }
+
+    private ConnectionFactory getConsumerConnectionFactory() {
+        return this.shareConsumerConnection ? this.consumerConnectionFactory : this.connectionFactory;
+    }
+
+    /**
+     * Create the router that retries the failed messages of a queue consumer through the queue
+     * and sends them to the binding's dead letter queue, {@code xdbus.<name>.dlq}, after the last
+     * attempt.
+     */
+    private FailedMessageRouter createFailedMessageRouter(String name, Queue queue, JmsPropertiesAccessor accessor,
+                                                          BindingMetrics metrics) {
+        FailedMessageRouter router = new FailedMessageRouter(queue, lookupQueue(name + DEAD_LETTER_SUFFIX),
+                accessor.getMaxAttempts(this.defaultMaxAttempts),
+                accessor.getBackOffInitialInterval(this.defaultBackOffInitialInterval),
+                accessor.getBackOffMultiplier(this.defaultBackOffMultiplier),
+                accessor.getBackOffMaxInterval(this.defaultBackOffMaxInterval));
+        router.setMetrics(metrics);
+        this.failedMessageRouters.put("inbound." + name, router);
+        return router;
+    }
+
+    private AdaptivePrefetchEndpoint createAdaptivePrefetchEndpoint(final String name, final Destination destination,
+                                                                    FlowControlledMessageListener listener,
+                                                                    int maxPrefetchSize,
+                                                                    final JmsPropertiesAccessor accessor) {
+        AdaptivePrefetchEndpoint endpoint = new AdaptivePrefetchEndpoint(
+                new AdaptivePrefetchEndpoint.ListenerContainerFactory() {
+                    @Override
+                    public DefaultMessageListenerContainer createContainer(int prefetchSize) {
+                        return createListenerContainer(name, withPrefetchSize(destination, prefetchSize), accessor);
+                    }
+                }, listener, maxPrefetchSize, accessor.getTargetLatency(this.defaultTargetLatency),
+                ADAPTIVE_PREFETCH_INTERVAL);
+        endpoint.setScheduler(this.taskScheduler);
+        return endpoint;
+    }
+
+    /**
+     * Create and register the metrics of a binding, unless metrics are disabled.
+     *
+     * @param queueName the physical queue whose depth is reported, or {@code null}
+     */
+    private BindingMetrics createMetrics(String bindingName, final String queueName) {
+        if (!this.metricsEnabled) {
+            return null;
+        }
+        BindingMetrics metrics = new BindingMetrics(bindingName, queueName == null ? null
+                : new BindingMetrics.QueueDepthSource() {
+                    @Override
+                    public long getQueueDepth() {
+                        return brokerStatistics.getQueueSize(queueName);
+                    }
+                });
+        this.bindingMetrics.put(bindingName, metrics);
+        AnnotationMBeanExporter exporter = this.mbeanExporter;
+        if (exporter != null) {
+            exporter.registerManagedResource(metrics, metricsObjectName(bindingName));
+        }
+        return metrics;
+    }
+
+    private void removeMetrics(String bindingName) {
+        AnnotationMBeanExporter exporter = this.mbeanExporter;
+        if (this.bindingMetrics.remove(bindingName) != null && exporter != null) {
+            exporter.unregisterManagedResource(metricsObjectName(bindingName));
+        }
+    }
+
+    private static ObjectName metricsObjectName(String bindingName) {
+        try {
+            return new ObjectName(JMX_DOMAIN + ":type=Binding,name=" + ObjectName.quote(bindingName));
+        }
+        catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("Invalid binding name " + bindingName, e);
+        }
+    }
+
+    private MessageHandler withMetrics(MessageHandler handler, BindingMetrics metrics) {
+        if (metrics == null) {
+            return handler;
+        }
+        MeteringHandler meteringHandler = new MeteringHandler(handler, metrics);
+        meteringHandler.setBeanFactory(this.getBeanFactory());
+        meteringHandler.afterPropertiesSet();
+        return meteringHandler;
+    }
+
+    private static String queueName(Queue queue) {
+        try {
+            return queue.getQueueName();
+        }
+        catch (JMSException e) {
+            throw JmsUtils.convertJmsAccessException(e);
+        }
+    }
+
+    /**
+     * Return the destination with the ActiveMQ {@code consumer.prefetchSize} option, which
+     * applies to consumers created on it; a negative size leaves the broker's default.
+     */
+    private Destination withPrefetchSize(Destination destination, int prefetchSize) {
+        if (prefetchSize < 0) {
+            return destination;
+        }
+        String options = "?consumer.prefetchSize=" + prefetchSize;
+        try {
+            return destination instanceof Topic
+                    ? lookupDestination(((Topic) destination).getTopicName() + options, true)
+                    : lookupDestination(((Queue) destination).getQueueName() + options, false);
+        }
+        catch (JMSException e) {
+            throw JmsUtils.convertJmsAccessException(e);
+        }
+    }
+
+    /**
+     * Create an endpoint that publishes batches of messages, as a {@link List} payload, to the
+     * module. Consumer batching changes the payload type the module sees, so unlike producer
+     * batching it is never enabled by a bus-wide default.
+     */
+    private BatchingJmsInboundEndpoint createBatchingEndpoint(Destination destination,
+                                                              MessageChannel moduleInputChannel,
+                                                              MessageConverter converter,
+                                                              JmsPropertiesAccessor accessor) {
+        BatchingJmsInboundEndpoint endpoint = new BatchingJmsInboundEndpoint(getConsumerConnectionFactory(), destination,
+                accessor.getBatchSize(this.defaultBatchSize), accessor.getBatchTimeout(this.defaultBatchTimeout));
+        if (destination instanceof Queue) {
+            endpoint.setConcurrency(accessor.getConcurrency(this.defaultConcurrency));
+        }
+        endpoint.setMessageConverter(converter);
+        endpoint.setOutputChannel(moduleInputChannel);
+        return endpoint;
+    }
+
+    /**
+     * Create the listener container for a consumer binding. Queue bindings honor the
+     * concurrency settings; a (non-durable) topic subscription is always consumed by a single
+     * consumer, since every additional consumer would receive its own copy of each message.
+     * Messages are received in a transacted session, so a listener that fails rolls its message
+     * back for the broker to redeliver instead of losing it. The container is initialized, and
+     * connects, when it is first started.
+     */
+    private DefaultMessageListenerContainer createListenerContainer(String name, Destination destination,
+                                                                    JmsPropertiesAccessor accessor) {
+        DefaultMessageListenerContainer container = new DefaultMessageListenerContainer();
+        container.setConnectionFactory(getConsumerConnectionFactory());
+        container.setDestination(destination);
+        container.setBeanName("inbound." + name);
+        container.setSessionTransacted(true);
+        if (destination instanceof Queue) {
+            int concurrency = accessor.getConcurrency(this.defaultConcurrency);
+            int maxConcurrency = Math.max(concurrency, accessor.getMaxConcurrency(this.defaultMaxConcurrency));
+            container.setConcurrentConsumers(concurrency);
+            container.setMaxConcurrentConsumers(maxConcurrency);
+            container.setIdleConsumerLimit(accessor.getIdleConsumerLimit(this.defaultIdleConsumerLimit));
+            container.setIdleTaskExecutionLimit(accessor.getIdleTaskExecutionLimit(this.defaultIdleTaskExecutionLimit));
+            if (maxConcurrency > concurrency) {
+                // surplus consumers can only be released when their task ends; with an unbounded
+                // task the container would never scale back down
+                container.setMaxMessagesPerTask(accessor.getMaxMessagesPerTask(this.defaultMaxMessagesPerTask));
+            }
+        }
+        return container;
     }
 
     @Override
     public void bindProducer(final String name, MessageChannel moduleOutputChannel, final Properties properties) {
         Assert.isInstanceOf(SubscribableChannel.class, moduleOutputChannel);
-        logger.info("declaring queue for outbound: {} ", name);
-
-        Queue queue = jmsTemplate.execute(new SessionCallback<Queue>() {
-            @Override
-            public Queue doInJms(Session session) throws JMSException {
-                return session.createQueue(DEFAULT_JMS_PREFIX + name);
+        JmsPropertiesAccessor accessor = new JmsPropertiesAccessor(properties);
+        PartitioningMetadata partitioningMetadata = new PartitioningMetadata(accessor);
+        boolean partitioned = partitioningMetadata.isPartitionedModule();
+        MessageConverter converter = createProducerConverter(name, accessor);
+        ConnectionFactory sendingConnectionFactory = getProducerConnectionFactory(name, accessor);
+        MessageHandler[] partitionHandlers;
+        if (partitioned) {
+            int partitionCount = accessor.getNextModuleCount();
+            logger.info("declaring {} partition queues for outbound: {} ", partitionCount, name);
+            partitionHandlers = new MessageHandler[partitionCount];
+            for (int i = 0; i < partitionCount; i++) {
+                partitionHandlers[i] = createProducerHandler(lookupQueue(name + "-" + i),
+                        sendingConnectionFactory, converter, accessor);
             }
-        });
-
-        JmsSendingMessageHandler handler = new JmsSendingMessageHandler(jmsTemplate);
+        }
+        else {
+            logger.info("declaring queue for outbound: {} ", name);
+            partitionHandlers = new MessageHandler[] {createProducerHandler(lookupQueue(name),
+                    sendingConnectionFactory, converter, accessor)};
+        }
+        String groupKeyExpression = accessor.getGroupKeyExpression(null);
+        SendingHandler handler = new SendingHandler(partitionHandlers,
+                partitioned ? partitioningMetadata : null,
+                groupKeyExpression != null ? EXPRESSION_PARSER.parseExpression(groupKeyExpression) : null);
         handler.setBeanFactory(this.getBeanFactory());
-        handler.setDestination(queue);
         handler.afterPropertiesSet();
+        MessageHandler outboundHandler = handler;
+        if (isDirectBindingAllowed(accessor)) {
+            LocalDeliveryHandler localDeliveryHandler = new LocalDeliveryHandler(name, handler, this.localConsumers);
+            localDeliveryHandler.setBeanFactory(this.getBeanFactory());
+            localDeliveryHandler.afterPropertiesSet();
+            outboundHandler = localDeliveryHandler;
+        }
+        outboundHandler = withMetrics(outboundHandler, createMetrics("outbound." + name,
+                partitioned ? null : DEFAULT_JMS_PREFIX + name));
 
-        EventDrivenConsumer consumer = new EventDrivenConsumer((SubscribableChannel) moduleOutputChannel, handler);
+        EventDrivenConsumer consumer = new EventDrivenConsumer((SubscribableChannel) moduleOutputChannel,
+                outboundHandler);
         consumer.setBeanFactory(getBeanFactory());
         consumer.setComponentName(name);
         consumer.setBeanName("outbound." + name);
         consumer.afterPropertiesSet();
 
 
-        Binding producerBinding = Binding.forProducer(name, moduleOutputChannel,consumer,new AbstractBusPropertiesAccessor(properties){
-
-        });
+        Binding producerBinding = Binding.forProducer(name, moduleOutputChannel,consumer,accessor);
         addBinding(producerBinding);
         producerBinding.start();
     }
 
+    /**
+     * Whether a producer binding may deliver to a consumer bound in this JVM without going
+     * through the broker. Not for partitioned or grouped producers, whose routing and ordering
+     * the broker provides, nor for persistent delivery, whether asked for by the binding or by
+     * the default delivery mode.
+     */
+    private boolean isDirectBindingAllowed(JmsPropertiesAccessor accessor) {
+        return accessor.isDirectBindingAllowed(false)
+                && !new PartitioningMetadata(accessor).isPartitionedModule()
+                && accessor.getGroupKeyExpression(null) == null
+                && !PERSISTENT.equals(accessor.getDeliveryMode(this.defaultDeliveryMode));
+    }
+
+    private AbstractMessageHandler createProducerHandler(Queue queue, ConnectionFactory sendingConnectionFactory,
+                                                         MessageConverter converter, JmsPropertiesAccessor accessor) {
+        AbstractMessageHandler handler;
+        if (accessor.isBatchingEnabled(this.defaultBatchingEnabled)) {
+            BatchingJmsMessageHandler batchingHandler = new BatchingJmsMessageHandler(sendingConnectionFactory,
+                    queue, accessor.getBatchSize(this.defaultBatchSize),
+                    accessor.getBatchTimeout(this.defaultBatchTimeout), this.taskScheduler);
+            batchingHandler.setMessageConverter(converter);
+            batchingHandler.setHeaderMapper(new SendTimeHeaderMapper(this.metricsEnabled));
+            batchingHandler.setDeliveryPersistent(isDeliveryPersistent(accessor));
+            batchingHandler.setPriority(accessor.getPriority(this.defaultPriority));
+            batchingHandler.setTimeToLive(accessor.getTimeToLive(this.defaultTimeToLive));
+            this.batchingHandlers.add(batchingHandler);
+            handler = batchingHandler;
+        }
+        else {
+            JmsSendingMessageHandler sendingHandler = new JmsSendingMessageHandler(
+                    createProducerTemplate(sendingConnectionFactory, converter, accessor));
+            sendingHandler.setDestination(queue);
+            sendingHandler.setHeaderMapper(new SendTimeHeaderMapper(this.metricsEnabled));
+            handler = sendingHandler;
+        }
+        handler.setBeanFactory(this.getBeanFactory());
+        handler.afterPropertiesSet();
+        return handler;
+    }
+
     @Override
     public void bindPubSubProducer(final String name, MessageChannel moduleOutputChannel, Properties properties) {
         logger.info("declaring topic for outbound: {} ", name);
         Assert.isInstanceOf(SubscribableChannel.class, moduleOutputChannel);
 
-        Topic topic = jmsTemplate.execute(new SessionCallback<Topic>() {
-            @Override
-            public Topic doInJms(Session session) throws JMSException {
-                return session.createTopic(DEFAULT_JMS_PREFIX + "topic"+name);
-            }
-        });
+        Topic topic = lookupTopic(name);
+        JmsPropertiesAccessor accessor = new JmsPropertiesAccessor(properties);
 
-        JmsSendingMessageHandler handler = new JmsSendingMessageHandler(jmsTemplate);
-        handler.setBeanFactory(this.getBeanFactory());
-        handler.setDestination(topic);
-        handler.afterPropertiesSet();
+        JmsSendingMessageHandler sendingHandler = new JmsSendingMessageHandler(createProducerTemplate(
+                getProducerConnectionFactory(name, accessor), createProducerConverter(name, accessor), accessor));
+        sendingHandler.setBeanFactory(this.getBeanFactory());
+        sendingHandler.setDestination(topic);
+        sendingHandler.setHeaderMapper(new SendTimeHeaderMapper(this.metricsEnabled));
+        sendingHandler.afterPropertiesSet();
+        MessageHandler handler = withMetrics(sendingHandler, createMetrics("outbound." + name, null));
+        if (this.publishOnlyWhenSubscribed) {
+            this.topicSubscriptionTracker.track(topicName(name));
+            PubSubSendingHandler pubSubHandler = new PubSubSendingHandler(handler, topicName(name),
+                    this.topicSubscriptionTracker);
+            pubSubHandler.setBeanFactory(this.getBeanFactory());
+            pubSubHandler.afterPropertiesSet();
+            handler = pubSubHandler;
+        }
 
         EventDrivenConsumer consumer = new EventDrivenConsumer((SubscribableChannel) moduleOutputChannel, handler);
         consumer.setBeanFactory(getBeanFactory());
@@ -158,25 +1053,792 @@ public class JmsMessageBus extends MessageBusSupport implements DisposableBean {
         consumer.afterPropertiesSet();
 
 
-        Binding producerBinding = Binding.forProducer(name, moduleOutputChannel,consumer,new AbstractBusPropertiesAccessor(properties){
-
-        });
+        Binding producerBinding = Binding.forProducer(name, moduleOutputChannel,consumer,accessor);
         addBinding(producerBinding);
         producerBinding.start();
     }
 
     @Override
     public void bindRequestor(String name, MessageChannel requests, MessageChannel replies, Properties properties) {
-         throw new UnsupportedOperationException("bindRequestor() is not implemented.");
+        Assert.isInstanceOf(SubscribableChannel.class, requests);
+        logger.info("declaring request and reply queues for requestor: {} ", name);
+        JmsPropertiesAccessor accessor = new JmsPropertiesAccessor(properties);
+        Queue requestQueue = lookupQueue(name + ".requests");
+        String replyQueueName = name + ".replies." + UUID.randomUUID();
+        Queue replyQueue = lookupQueue(replyQueueName);
+        this.replyQueues.put(replies, replyQueueName);
+
+        MessageConverter converter = createProducerConverter(name, accessor);
+        JmsRequestReplyHandler handler = new JmsRequestReplyHandler(
+                createProducerTemplate(getProducerConnectionFactory(name, accessor), converter, accessor),
+                requestQueue, replyQueue, replies, accessor.getReplyTimeout(this.defaultReplyTimeout));
+        handler.setTaskScheduler(this.taskScheduler);
+        handler.setMessageConverter(converter);
+        handler.setBeanFactory(this.getBeanFactory());
+        handler.afterPropertiesSet();
+
+        EventDrivenConsumer consumer = new EventDrivenConsumer((SubscribableChannel) requests, handler);
+        consumer.setBeanFactory(getBeanFactory());
+        consumer.setBeanName("outbound." + name);
+        consumer.afterPropertiesSet();
+        Binding producerBinding = Binding.forProducer(name, requests, consumer, accessor);
+        addBinding(producerBinding);
+        producerBinding.start();
+
+        DefaultMessageListenerContainer container = createListenerContainer(name + ".replies", replyQueue, accessor);
+        container.setMessageListener(handler);
+        MessageListenerContainerEndpoint endpoint = new MessageListenerContainerEndpoint(container);
+        endpoint.setBeanFactory(getBeanFactory());
+        endpoint.setBeanName("inbound." + name);
+        endpoint.afterPropertiesSet();
+        Binding consumerBinding = Binding.forConsumer(name, endpoint, replies, accessor);
+        addBinding(consumerBinding);
+        startConsumerBinding(name, replies, consumerBinding, false);
     }
 
+    /**
+     * Consume requests from the requestor's request queue and send each reply to the
+     * {@code JMSReplyTo} destination of its request; the request's correlation id travels back
+     * in the mapped {@code jms_correlationId} header.
+     */
     @Override
     public void bindReplier(String name, MessageChannel requests, MessageChannel replies, Properties properties) {
-        throw new UnsupportedOperationException("bindReplier() is not implemented.");
+        Assert.isInstanceOf(SubscribableChannel.class, replies);
+        logger.info("declaring request queue for replier: {} ", name);
+        JmsPropertiesAccessor accessor = new JmsPropertiesAccessor(properties);
+        doRegisterConsumer(name, lookupQueue(name + ".requests"), requests, accessor);
+
+        JmsSendingMessageHandler handler = new JmsSendingMessageHandler(createProducerTemplate(
+                getProducerConnectionFactory(name, accessor), createProducerConverter(name, accessor), accessor));
+        handler.setDestinationExpression(
+                EXPRESSION_PARSER.parseExpression("headers['" + JmsHeaders.REPLY_TO + "']"));
+        handler.setBeanFactory(this.getBeanFactory());
+        handler.afterPropertiesSet();
+
+        EventDrivenConsumer consumer = new EventDrivenConsumer((SubscribableChannel) replies, handler);
+        consumer.setBeanFactory(getBeanFactory());
+        consumer.setBeanName("outbound." + name);
+        consumer.afterPropertiesSet();
+        Binding producerBinding = Binding.forProducer(name, replies, consumer, accessor);
+        addBinding(producerBinding);
+        producerBinding.start();
+    }
+
+    /**
+     * Stop all bindings, then commit any partial batches left in batching producers.
+     */
+    @Override
+    public void stopBindings() {
+        for (ConsumerStarter starter : this.pendingStarts) {
+            starter.cancel();
+        }
+        for (List<LocalConsumer> instances : this.localConsumers.values()) {
+            for (LocalConsumer localConsumer : instances) {
+                localConsumer.stop();
+            }
+        }
+        this.localConsumers.clear();
+        super.stopBindings();
+        List<BatchingJmsMessageHandler> handlers;
+        synchronized (this.batchingHandlers) {
+            handlers = new ArrayList<BatchingJmsMessageHandler>(this.batchingHandlers);
+        }
+        for (BatchingJmsMessageHandler handler : handlers) {
+            try {
+                handler.stop();
+            }
+            catch (RuntimeException e) {
+                logger.error("Failed to flush batching producer", e);
+            }
+        }
     }
 
     @Override
     public void destroy() throws Exception {
         stopBindings();
+        for (String replyQueueName : this.replyQueues.values()) {
+            deleteQueue(replyQueueName);
+        }
+        this.replyQueues.clear();
+        setJmxEnabled(false);
+        topicSubscriptionTracker.destroy();
+        taskScheduler.destroy();
+        synchronized (this) {
+            if (bindingStartupExecutor != null) {
+                bindingStartupExecutor.destroy();
+            }
+        }
+        producerConnectionFactory.destroy();
+        consumerConnectionFactory.destroy();
+        for (CachingConnectionFactory asyncConnectionFactory : asyncProducerConnectionFactories.values()) {
+            asyncConnectionFactory.destroy();
+        }
+    }
+
+    private Queue lookupQueue(String name) {
+        return (Queue) lookupDestination(DEFAULT_JMS_PREFIX + name, false);
+    }
+
+    private Topic lookupTopic(String name) {
+        return (Topic) lookupDestination(topicName(name), true);
+    }
+
+    /**
+     * Return the queue or topic of the given physical name, created through a session the first
+     * time it is asked for and cached by name afterwards.
+     */
+    private Destination lookupDestination(final String physicalName, final boolean topic) {
+        String key = (topic ? "topic://" : "queue://") + physicalName;
+        Destination destination = this.destinations.get(key);
+        if (destination == null) {
+            destination = jmsTemplate.execute(new SessionCallback<Destination>() {
+                @Override
+                public Destination doInJms(Session session) throws JMSException {
+                    return topic ? session.createTopic(physicalName) : session.createQueue(physicalName);
+                }
+            });
+            Destination existing = this.destinations.putIfAbsent(key, destination);
+            if (existing != null) {
+                destination = existing;
+            }
+        }
+        return destination;
+    }
+
+    /**
+     * Remove a queue, which must have no consumers left, from the broker. Only ActiveMQ
+     * supports this; with other brokers the queue is left behind.
+     */
+    private void deleteQueue(String name) {
+        final Destination queue = this.destinations.remove("queue://" + DEFAULT_JMS_PREFIX + name);
+        if (!(queue instanceof ActiveMQDestination)) {
+            return;
+        }
+        try {
+            this.jmsTemplate.execute(new SessionCallback<Object>() {
+                @Override
+                public Object doInJms(Session session) throws JMSException {
+                    if (session instanceof ActiveMQSession) {
+                        ((ActiveMQSession) session).getConnection().destroyDestination((ActiveMQDestination) queue);
+                    }
+                    return null;
+                }
+            });
+        }
+        catch (JmsException e) {
+            logger.warn("Failed to delete queue " + DEFAULT_JMS_PREFIX + name, e);
+        }
+    }
+
+    private static String topicName(String name) {
+        return DEFAULT_JMS_PREFIX + "topic" + name;
+    }
+
+    /**
+     * Create the converter for a producer binding, compressing payloads if the binding has
+     * {@code compress} enabled.
+     */
+    private MessageConverter createProducerConverter(String name, JmsPropertiesAccessor accessor) {
+        if (!this.useBytesMessages) {
+            return new SimpleMessageConverter();
+        }
+        JmsBusMessageConverter converter = accessor.isCompress(this.defaultCompress)
+                ? this.busMessageConverter.forBinding(this.payloadCompressor,
+                        accessor.getCompressionThreshold(this.defaultCompressionThreshold))
+                : this.busMessageConverter.forBinding(null, 0);
+        this.compressionStatistics.put("outbound." + name, converter.getStatistics());
+        return converter;
+    }
+
+    private MessageConverter createConsumerConverter(String name) {
+        JmsBusMessageConverter converter = this.busMessageConverter.forBinding(null, 0);
+        this.compressionStatistics.put("inbound." + name, converter.getStatistics());
+        return converter;
+    }
+
+    private JmsTemplate createProducerTemplate(ConnectionFactory sendingConnectionFactory,
+                                              MessageConverter converter, JmsPropertiesAccessor accessor) {
+        JmsTemplate template = new JmsTemplate(sendingConnectionFactory);
+        template.setMessageConverter(converter);
+        template.setExplicitQosEnabled(true);
+        template.setDeliveryPersistent(isDeliveryPersistent(accessor));
+        template.setPriority(accessor.getPriority(this.defaultPriority));
+        template.setTimeToLive(accessor.getTimeToLive(this.defaultTimeToLive));
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    private boolean isDeliveryPersistent(JmsPropertiesAccessor accessor) {
+        String deliveryMode = accessor.getDeliveryMode(this.defaultDeliveryMode);
+        Assert.isTrue(PERSISTENT.equals(deliveryMode) || NON_PERSISTENT.equals(deliveryMode),
+                "deliveryMode must be '" + PERSISTENT + "' or '" + NON_PERSISTENT + "'");
+        return PERSISTENT.equals(deliveryMode);
+    }
+
+    /**
+     * Return the connection factory a producer binding sends through. A binding with
+     * {@code asyncSend} enabled gets its own connection that sends without waiting for the
+     * broker, bounded by the binding's producer window; failures reported on that connection
+     * are counted and passed to the {@link SendFailureCallback}.
+     */
+    private ConnectionFactory getProducerConnectionFactory(final String name, JmsPropertiesAccessor accessor) {
+        if (!accessor.isAsyncSend(this.defaultAsyncSend)) {
+            return cacheProducerConnections ? producerConnectionFactory : connectionFactory;
+        }
+        if (!(this.connectionFactory instanceof ActiveMQConnectionFactory)) {
+            logger.warn("asyncSend requires an ActiveMQ connection factory; {} sends synchronously", name);
+            return cacheProducerConnections ? producerConnectionFactory : connectionFactory;
+        }
+        ActiveMQConnectionFactory asyncConnectionFactory = ((ActiveMQConnectionFactory) this.connectionFactory).copy();
+        asyncConnectionFactory.setUseAsyncSend(true);
+        asyncConnectionFactory.setProducerWindowSize(accessor.getProducerWindowSize(this.defaultProducerWindowSize));
+        final String bindingName = "outbound." + name;
+        final AtomicLong failures = new AtomicLong();
+        this.sendFailures.put(bindingName, failures);
+        CachingConnectionFactory cachingConnectionFactory = new CachingConnectionFactory(asyncConnectionFactory);
+        cachingConnectionFactory.setCacheProducers(true);
+        cachingConnectionFactory.setReconnectOnException(true);
+        cachingConnectionFactory.setExceptionListener(new ExceptionListener() {
+            @Override
+            public void onException(JMSException exception) {
+                failures.incrementAndGet();
+                sendFailureCallback.onSendFailure(bindingName, exception);
+            }
+        });
+        CachingConnectionFactory previous = this.asyncProducerConnectionFactories.put(bindingName,
+                cachingConnectionFactory);
+        if (previous != null) {
+            previous.destroy();
+        }
+        return cachingConnectionFactory;
+    }
+
+    /**
+     * Sends module output through the handler for its partition. An unpartitioned producer has
+     * a single handler; otherwise the partition is determined by
+     * {@link MessageBusSupport#determinePartition(Message, PartitioningMetadata)}, from the
+     * standard XD partitioning properties: {@code partitionKeyExpression} or
+     * {@code partitionKeyExtractorClass} for the key, and {@code partitionSelectorExpression} or
+     * {@code partitionSelectorClass} for the partition, by default the key's hash. With a group key expression, each message is
+     * stamped with a {@code JMSXGroupID} so that the broker delivers all messages of a group, in
+     * order, to the same consumer. Lifecycle calls are passed on to the partition handlers, so
+     * batching handlers flush when the binding stops.
+     */
+    private class SendingHandler extends AbstractMessageHandler implements Lifecycle {
+
+        private final MessageHandler[] partitionHandlers;
+
+        private final PartitioningMetadata partitioningMetadata;
+
+        private final Expression groupKeyExpression;
+
+        private final EvaluationContext evaluationContext = new StandardEvaluationContext();
+
+        private volatile boolean running;
+
+        private SendingHandler(MessageHandler[] partitionHandlers, PartitioningMetadata partitioningMetadata,
+                               Expression groupKeyExpression) {
+            this.partitionHandlers = partitionHandlers;
+            this.partitioningMetadata = partitioningMetadata;
+            this.groupKeyExpression = groupKeyExpression;
+        }
+
+        @Override
+        protected void handleMessageInternal(Message<?> message) throws Exception {
+            if (this.groupKeyExpression != null) {
+                Object groupKey = this.groupKeyExpression.getValue(this.evaluationContext, message);
+                if (groupKey != null) {
+                    message = MessageBuilder.fromMessage(message)
+                            .setHeader(JMSX_GROUP_ID, groupKey.toString())
+                            .build();
+                }
+            }
+            int partition = this.partitioningMetadata == null ? 0
+                    : determinePartition(message, this.partitioningMetadata);
+            this.partitionHandlers[partition].handleMessage(message);
+        }
+
+        @Override
+        public void start() {
+            for (MessageHandler handler : this.partitionHandlers) {
+                if (handler instanceof Lifecycle) {
+                    ((Lifecycle) handler).start();
+                }
+            }
+            this.running = true;
+        }
+
+        @Override
+        public void stop() {
+            this.running = false;
+            for (MessageHandler handler : this.partitionHandlers) {
+                if (handler instanceof Lifecycle) {
+                    ((Lifecycle) handler).stop();
+                }
+            }
+        }
+
+        @Override
+        public boolean isRunning() {
+            return this.running;
+        }
+    }
+
+    /**
+     * Records the producer's {@link BindingMetrics} around the delegate's send; the send time
+     * is stamped on the JMS message by a {@link SendTimeHeaderMapper}. Lifecycle calls are
+     * passed on.
+     */
+    private static class MeteringHandler extends AbstractMessageHandler implements Lifecycle {
+
+        private final MessageHandler delegate;
+
+        private final BindingMetrics metrics;
+
+        private MeteringHandler(MessageHandler delegate, BindingMetrics metrics) {
+            this.delegate = delegate;
+            this.metrics = metrics;
+        }
+
+        @Override
+        protected void handleMessageInternal(Message<?> message) throws Exception {
+            long start = System.nanoTime();
+            try {
+                this.delegate.handleMessage(message);
+            }
+            catch (RuntimeException e) {
+                this.metrics.recordError();
+                throw e;
+            }
+            this.metrics.recordMessage(System.nanoTime() - start);
+        }
+
+        @Override
+        public void start() {
+            if (this.delegate instanceof Lifecycle) {
+                ((Lifecycle) this.delegate).start();
+            }
+        }
+
+        @Override
+        public void stop() {
+            if (this.delegate instanceof Lifecycle) {
+                ((Lifecycle) this.delegate).stop();
+            }
+        }
+
+        @Override
+        public boolean isRunning() {
+            return !(this.delegate instanceof Lifecycle) || ((Lifecycle) this.delegate).isRunning();
+        }
+    }
+
+    /**
+     * Hands module output to a {@link LocalConsumer} of the same name if one is bound in this
+     * JVM and accepts it, and sends it through the broker otherwise. When several instances of
+     * the consumer are bound, messages go to them in turn, and on to the next instance when one
+     * is full. The consumers are looked up for every message, so the producer falls back to the
+     * broker as soon as they are unbound.
+     */
+    private static class LocalDeliveryHandler extends AbstractMessageHandler implements Lifecycle {
+
+        private final String name;
+
+        private final SendingHandler brokerHandler;
+
+        private final Map<String, List<LocalConsumer>> localConsumers;
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        private LocalDeliveryHandler(String name, SendingHandler brokerHandler,
+                                     Map<String, List<LocalConsumer>> localConsumers) {
+            this.name = name;
+            this.brokerHandler = brokerHandler;
+            this.localConsumers = localConsumers;
+        }
+
+        @Override
+        protected void handleMessageInternal(Message<?> message) throws Exception {
+            List<LocalConsumer> instances = this.localConsumers.get(this.name);
+            if (instances != null) {
+                Object[] candidates = instances.toArray();
+                int start = candidates.length > 1 ? (this.next.getAndIncrement() & Integer.MAX_VALUE) : 0;
+                for (int i = 0; i < candidates.length; i++) {
+                    LocalConsumer localConsumer = (LocalConsumer) candidates[(start + i) % candidates.length];
+                    if (localConsumer.offer(message, this.brokerHandler)) {
+                        return;
+                    }
+                }
+            }
+            this.brokerHandler.handleMessage(message);
+        }
+
+        @Override
+        public void start() {
+            this.brokerHandler.start();
+        }
+
+        @Override
+        public void stop() {
+            this.brokerHandler.stop();
+        }
+
+        @Override
+        public boolean isRunning() {
+            return this.brokerHandler.isRunning();
+        }
+    }
+
+    /**
+     * Publishes module output to a topic only while the topic has subscribers; otherwise the
+     * message is dropped before it is encoded.
+     */
+    private static class PubSubSendingHandler extends AbstractMessageHandler {
+
+        private final MessageHandler delegate;
+
+        private final String topicName;
+
+        private final TopicSubscriptionTracker tracker;
+
+        private PubSubSendingHandler(MessageHandler delegate, String topicName, TopicSubscriptionTracker tracker) {
+            this.delegate = delegate;
+            this.topicName = topicName;
+            this.tracker = tracker;
+        }
+
+        @Override
+        protected void handleMessageInternal(Message<?> message) throws Exception {
+            if (this.tracker.hasSubscribers(this.topicName)) {
+                this.delegate.handleMessage(message);
+            }
+        }
+    }
+
+    /**
+     * Starts a queue consumer binding, at most once, unless it is cancelled first. A lazy
+     * starter polls the module input channel on the bus scheduler and hands the start to the
+     * binding startup executor once the channel has a subscriber. Cancelling waits for a start
+     * in progress, so that the binding can be stopped afterwards.
+     */
+    private class ConsumerStarter implements Runnable {
+
+        private final String name;
+
+        private final MessageChannel moduleInputChannel;
+
+        private final Binding binding;
+
+        private Future<?> pollFuture;
+
+        private Future<?> startFuture;
+
+        private boolean done;
+
+        private ConsumerStarter(String name, MessageChannel moduleInputChannel, Binding binding) {
+            this.name = name;
+            this.moduleInputChannel = moduleInputChannel;
+            this.binding = binding;
+        }
+
+        private void submit() {
+            ThreadPoolTaskExecutor executor = getBindingStartupExecutor();
+            if (executor == null) {
+                run();
+                return;
+            }
+            synchronized (this) {
+                if (!this.done) {
+                    this.startFuture = executor.submit(this);
+                }
+            }
+        }
+
+        private synchronized void startWhenSubscribed(final AbstractSubscribableChannel channel) {
+            this.pollFuture = taskScheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    if (channel.getSubscriberCount() > 0) {
+                        synchronized (ConsumerStarter.this) {
+                            pollFuture.cancel(false);
+                        }
+                        submit();
+                    }
+                }
+            }, LAZY_START_INTERVAL);
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (this.done) {
+                    return;
+                }
+                this.done = true;
+                try {
+                    this.binding.start();
+                }
+                catch (RuntimeException e) {
+                    logger.error("Failed to start consumer binding " + this.name, e);
+                }
+            }
+            pendingStarts.remove(this);
+        }
+
+        private void cancel() {
+            synchronized (this) {
+                this.done = true;
+                if (this.pollFuture != null) {
+                    this.pollFuture.cancel(false);
+                }
+                if (this.startFuture != null) {
+                    this.startFuture.cancel(false);
+                }
+            }
+            pendingStarts.remove(this);
+        }
+    }
+
+    private static class JmsPropertiesAccessor extends AbstractBusPropertiesAccessor {
+
+        /**
+         * The number of idle consumers above {@code concurrency} that are kept while scaled up.
+         */
+        private static final String IDLE_CONSUMER_LIMIT = "idleConsumerLimit";
+
+        /**
+         * The number of consecutive empty receives after which a surplus consumer is released.
+         */
+        private static final String IDLE_TASK_EXECUTION_LIMIT = "idleTaskExecutionLimit";
+
+        /**
+         * The number of messages a consumer task processes before it is rescheduled.
+         */
+        private static final String MAX_MESSAGES_PER_TASK = "maxMessagesPerTask";
+
+        /**
+         * Whether a queue producer sends in transacted batches, or a consumer receives in batches.
+         */
+        private static final String BATCHING_ENABLED = "batchingEnabled";
+
+        /**
+         * The maximum number of messages per batch.
+         */
+        private static final String BATCH_SIZE = "batchSize";
+
+        /**
+         * The time in milliseconds after which a partial batch is committed or published.
+         */
+        private static final String BATCH_TIMEOUT = "batchTimeout";
+
+        /**
+         * The time in milliseconds a requestor waits for a reply.
+         */
+        private static final String REPLY_TIMEOUT = "replyTimeout";
+
+        /**
+         * SpEL expression, evaluated against the outbound message, whose value becomes the
+         * message's {@code JMSXGroupID}.
+         */
+        private static final String GROUP_KEY_EXPRESSION = "groupKeyExpression";
+
+        /**
+         * The partition consumed by a partitioned consumer.
+         */
+        private static final String PARTITION_INDEX = "partitionIndex";
+
+        /**
+         * Whether a producer compresses payloads.
+         */
+        private static final String COMPRESS = "compress";
+
+        /**
+         * The encoded payload size in bytes from which a producer compresses payloads.
+         */
+        private static final String COMPRESSION_THRESHOLD = "compressionThreshold";
+
+        /**
+         * The delivery mode of a producer, {@code persistent} or {@code nonPersistent}.
+         */
+        private static final String DELIVERY_MODE = "deliveryMode";
+
+        /**
+         * The JMS priority of sent messages.
+         */
+        private static final String PRIORITY = "priority";
+
+        /**
+         * The time in milliseconds after which the broker discards an undelivered message.
+         */
+        private static final String TIME_TO_LIVE = "timeToLive";
+
+        /**
+         * Whether a producer sends without waiting for the broker's acknowledgement.
+         */
+        private static final String ASYNC_SEND = "asyncSend";
+
+        /**
+         * The number of unacknowledged bytes an asynchronous producer may have in flight.
+         */
+        private static final String PRODUCER_WINDOW_SIZE = "producerWindowSize";
+
+        /**
+         * The number of messages the broker dispatches to a consumer ahead of acknowledgement.
+         */
+        private static final String PREFETCH_SIZE = "prefetchSize";
+
+        /**
+         * The maximum number of messages a consumer binding hands to its module at a time.
+         */
+        private static final String MAX_IN_FLIGHT = "maxInFlight";
+
+        /**
+         * Whether a consumer adjusts its prefetch to the module's latency.
+         */
+        private static final String ADAPTIVE_PREFETCH = "adaptivePrefetch";
+
+        /**
+         * The module latency in milliseconds above which an adaptive consumer lowers its prefetch.
+         */
+        private static final String TARGET_LATENCY = "targetLatency";
+
+        /**
+         * Whether a producer may deliver to a consumer bound in the same JVM through memory.
+         */
+        private static final String DIRECT_BINDING_ALLOWED = "directBindingAllowed";
+
+        /**
+         * Whether a queue consumer only starts once its module input channel has a subscriber.
+         */
+        private static final String LAZY_START = "lazyStart";
+
+        /**
+         * The number of attempts to deliver a message to a queue consumer's module.
+         */
+        private static final String MAX_ATTEMPTS = "maxAttempts";
+
+        /**
+         * The delay in milliseconds before a failed message is retried.
+         */
+        private static final String BACK_OFF_INITIAL_INTERVAL = "backOffInitialInterval";
+
+        /**
+         * The factor by which the retry delay grows with each attempt.
+         */
+        private static final String BACK_OFF_MULTIPLIER = "backOffMultiplier";
+
+        /**
+         * The maximum retry delay in milliseconds.
+         */
+        private static final String BACK_OFF_MAX_INTERVAL = "backOffMaxInterval";
+
+        public JmsPropertiesAccessor(Properties properties) {
+            super(properties);
+        }
+
+        public int getIdleConsumerLimit(int defaultValue) {
+            return getProperty(IDLE_CONSUMER_LIMIT, defaultValue);
+        }
+
+        public int getIdleTaskExecutionLimit(int defaultValue) {
+            return getProperty(IDLE_TASK_EXECUTION_LIMIT, defaultValue);
+        }
+
+        public int getMaxMessagesPerTask(int defaultValue) {
+            return getProperty(MAX_MESSAGES_PER_TASK, defaultValue);
+        }
+
+        public String getGroupKeyExpression(String defaultValue) {
+            return getProperty(GROUP_KEY_EXPRESSION, defaultValue);
+        }
+
+        public int getPartitionIndex(int defaultValue) {
+            return getProperty(PARTITION_INDEX, defaultValue);
+        }
+
+        public long getReplyTimeout(long defaultValue) {
+            return getProperty(REPLY_TIMEOUT, defaultValue);
+        }
+
+        public boolean isBatchingEnabled(boolean defaultValue) {
+            return getProperty(BATCHING_ENABLED, defaultValue);
+        }
+
+        public int getBatchSize(int defaultValue) {
+            return getProperty(BATCH_SIZE, defaultValue);
+        }
+
+        public long getBatchTimeout(long defaultValue) {
+            return getProperty(BATCH_TIMEOUT, defaultValue);
+        }
+
+        public boolean isCompress(boolean defaultValue) {
+            return getProperty(COMPRESS, defaultValue);
+        }
+
+        public int getCompressionThreshold(int defaultValue) {
+            return getProperty(COMPRESSION_THRESHOLD, defaultValue);
+        }
+
+        public String getDeliveryMode(String defaultValue) {
+            return getProperty(DELIVERY_MODE, defaultValue);
+        }
+
+        public int getPriority(int defaultValue) {
+            return getProperty(PRIORITY, defaultValue);
+        }
+
+        public long getTimeToLive(long defaultValue) {
+            return getProperty(TIME_TO_LIVE, defaultValue);
+        }
+
+        public boolean isAsyncSend(boolean defaultValue) {
+            return getProperty(ASYNC_SEND, defaultValue);
+        }
+
+        public int getProducerWindowSize(int defaultValue) {
+            return getProperty(PRODUCER_WINDOW_SIZE, defaultValue);
+        }
+
+        public int getPrefetchSize(int defaultValue) {
+            return getProperty(PREFETCH_SIZE, defaultValue);
+        }
+
+        public int getMaxInFlight(int defaultValue) {
+            return getProperty(MAX_IN_FLIGHT, defaultValue);
+        }
+
+        public boolean isAdaptivePrefetch(boolean defaultValue) {
+            return getProperty(ADAPTIVE_PREFETCH, defaultValue);
+        }
+
+        public long getTargetLatency(long defaultValue) {
+            return getProperty(TARGET_LATENCY, defaultValue);
+        }
+
+        public boolean isDirectBindingAllowed(boolean defaultValue) {
+            return getProperty(DIRECT_BINDING_ALLOWED, defaultValue);
+        }
+
+        public boolean isLazyStart(boolean defaultValue) {
+            return getProperty(LAZY_START, defaultValue);
+        }
+
+        public int getMaxAttempts(int defaultValue) {
+            return getProperty(MAX_ATTEMPTS, defaultValue);
+        }
+
+        public long getBackOffInitialInterval(long defaultValue) {
+            return getProperty(BACK_OFF_INITIAL_INTERVAL, defaultValue);
+        }
+
+        public double getBackOffMultiplier(double defaultValue) {
+            String value = getProperty(BACK_OFF_MULTIPLIER, (String) null);
+            return value == null ? defaultValue : Double.parseDouble(value);
+        }
+
+        public long getBackOffMaxInterval(long defaultValue) {
+            return getProperty(BACK_OFF_MAX_INTERVAL, defaultValue);
+        }
     }
 }
@@ -0,0 +1,215 @@
+package org.springframework.xd.bus.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.Lifecycle;
+import org.springframework.integration.handler.AbstractMessageHandler;
+import org.springframework.integration.jms.DefaultJmsHeaderMapper;
+import org.springframework.integration.jms.JmsHeaderMapper;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessagePostProcessor;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.Assert;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageListener;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The requestor side of a request/reply binding. Requests are sent to the request destination
+ * with a correlation id and a shared reply destination; replies arriving on that destination
+ * (through this handler acting as a {@link MessageListener}) are matched to their request by
+ * correlation id and published to the replies channel with the request headers that cannot
+ * travel over JMS (such as a gateway's reply channel) restored.
+ * <p>
+ * Requests that are not answered within {@code replyTimeout} milliseconds are discarded by
+ * {@link #expirePendingRequests()}, which runs on the configured scheduler while the handler is
+ * started; replies arriving after that are dropped.
+ *
+ * @since 1.1
+ */
+public class JmsRequestReplyHandler extends AbstractMessageHandler implements MessageListener, Lifecycle {
+    private static Logger logger = LoggerFactory.getLogger(JmsRequestReplyHandler.class);
+    private final JmsTemplate jmsTemplate;
+    private final Destination requestDestination;
+    private final Destination replyDestination;
+    private final MessageChannel replyChannel;
+    private final long replyTimeout;
+    private final String correlationPrefix = UUID.randomUUID().toString() + "-";
+    private final AtomicLong correlationSequence = new AtomicLong();
+    private final Map<String, PendingRequest> pendingRequests = new ConcurrentHashMap<String, PendingRequest>();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong lateReplies = new AtomicLong();
+    private volatile MessageConverter messageConverter = new SimpleMessageConverter();
+    private volatile JmsHeaderMapper headerMapper = new DefaultJmsHeaderMapper();
+    private volatile TaskScheduler taskScheduler;
+    private volatile ScheduledFuture<?> expiryTask;
+
+    public JmsRequestReplyHandler(JmsTemplate jmsTemplate, Destination requestDestination,
+                                  Destination replyDestination, MessageChannel replyChannel, long replyTimeout) {
+        Assert.notNull(jmsTemplate, "jmsTemplate must not be null");
+        Assert.notNull(requestDestination, "requestDestination must not be null");
+        Assert.notNull(replyDestination, "replyDestination must not be null");
+        Assert.notNull(replyChannel, "replyChannel must not be null");
+        this.jmsTemplate = jmsTemplate;
+        this.requestDestination = requestDestination;
+        this.replyDestination = replyDestination;
+        this.replyChannel = replyChannel;
+        this.replyTimeout = replyTimeout;
+    }
+
+    public void setMessageConverter(MessageConverter messageConverter) {
+        Assert.notNull(messageConverter, "messageConverter must not be null");
+        this.messageConverter = messageConverter;
+    }
+
+    public void setHeaderMapper(JmsHeaderMapper headerMapper) {
+        Assert.notNull(headerMapper, "headerMapper must not be null");
+        this.headerMapper = headerMapper;
+    }
+
+    /**
+     * Set the scheduler used to expire unanswered requests while this handler is running.
+     */
+    public void setTaskScheduler(TaskScheduler taskScheduler) {
+        this.taskScheduler = taskScheduler;
+    }
+
+    /**
+     * @return the number of requests discarded without a reply
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * @return the number of replies dropped because their request had already timed out
+     */
+    public long getLateReplies() {
+        return lateReplies.get();
+    }
+
+    /**
+     * @return the number of requests awaiting a reply
+     */
+    public int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    @Override
+    public String getComponentType() {
+        return "jms:request-reply-outbound-gateway";
+    }
+
+    @Override
+    public synchronized void start() {
+        if (expiryTask == null && taskScheduler != null) {
+            expiryTask = taskScheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    expirePendingRequests();
+                }
+            }, Math.max(1, Math.min(replyTimeout, 1000)));
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (expiryTask != null) {
+            expiryTask.cancel(false);
+            expiryTask = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return expiryTask != null;
+    }
+
+    @Override
+    protected void handleMessageInternal(final Message<?> message) throws Exception {
+        final String correlationId = correlationPrefix + correlationSequence.incrementAndGet();
+        pendingRequests.put(correlationId,
+                new PendingRequest(message.getHeaders(), System.currentTimeMillis() + replyTimeout));
+        try {
+            jmsTemplate.convertAndSend(requestDestination, message.getPayload(), new MessagePostProcessor() {
+                @Override
+                public javax.jms.Message postProcessMessage(javax.jms.Message jmsMessage) throws JMSException {
+                    headerMapper.fromHeaders(message.getHeaders(), jmsMessage);
+                    jmsMessage.setJMSCorrelationID(correlationId);
+                    jmsMessage.setJMSReplyTo(replyDestination);
+                    return jmsMessage;
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            pendingRequests.remove(correlationId);
+            throw e;
+        }
+    }
+
+    @Override
+    public void onMessage(javax.jms.Message jmsMessage) {
+        try {
+            String correlationId = jmsMessage.getJMSCorrelationID();
+            PendingRequest request = correlationId != null ? pendingRequests.remove(correlationId) : null;
+            if (request == null) {
+                lateReplies.incrementAndGet();
+                logger.debug("Dropping reply for unknown or expired request: {}", correlationId);
+                return;
+            }
+            Message<?> reply = MessageBuilder.withPayload(messageConverter.fromMessage(jmsMessage))
+                    .copyHeaders(headerMapper.toHeaders(jmsMessage))
+                    .copyHeadersIfAbsent(request.headers)
+                    .build();
+            replyChannel.send(reply);
+        }
+        catch (JMSException e) {
+            throw new IllegalStateException("Failed to process reply", e);
+        }
+    }
+
+    /**
+     * Discard requests whose reply timeout has elapsed.
+     *
+     * @return the number of requests discarded
+     */
+    public int expirePendingRequests() {
+        long now = System.currentTimeMillis();
+        int expired = 0;
+        for (Iterator<Map.Entry<String, PendingRequest>> it = pendingRequests.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, PendingRequest> entry = it.next();
+            if (entry.getValue().deadline <= now && pendingRequests.remove(entry.getKey(), entry.getValue())) {
+                expired++;
+            }
+        }
+        if (expired > 0) {
+            timeouts.addAndGet(expired);
+            logger.warn("{} requests to {} timed out after {} ms without a reply",
+                    new Object[] {expired, requestDestination, replyTimeout});
+        }
+        return expired;
+    }
+
+    private static class PendingRequest {
+        private final MessageHeaders headers;
+        private final long deadline;
+
+        private PendingRequest(MessageHeaders headers, long deadline) {
+            this.headers = headers;
+            this.deadline = deadline;
+        }
+    }
+}
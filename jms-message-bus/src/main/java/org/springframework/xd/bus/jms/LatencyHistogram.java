@@ -0,0 +1,102 @@
+package org.springframework.xd.bus.jms;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values with logarithmic buckets: each power of two is
+ * split into four buckets, so a reported percentile is within 25% of the recorded value.
+ * Buckets are striped like {@link StripedCounter} to keep concurrent recording cheap.
+ *
+ * @since 1.1
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 256;
+    private final AtomicLongArray buckets = new AtomicLongArray(StripedCounter.STRIPES * BUCKETS);
+    private final StripedCounter sum = new StripedCounter();
+    private volatile long max;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        this.buckets.getAndIncrement(StripedCounter.stripe() * BUCKETS + bucketIndex(value));
+        this.sum.add(value);
+        if (value > this.max) {
+            synchronized (this) {
+                if (value > this.max) {
+                    this.max = value;
+                }
+            }
+        }
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (long bucketCount : snapshot()) {
+            count += bucketCount;
+        }
+        return count;
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) this.sum.sum() / count;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    /**
+     * @param percentile between 0 and 1
+     * @return the upper bound of the bucket holding the given percentile, or 0 if nothing was
+     * recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = snapshot();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    private long[] snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int stripe = 0; stripe < StripedCounter.STRIPES; stripe++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += this.buckets.get(stripe * BUCKETS + i);
+            }
+        }
+        return counts;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 4) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - 2)) & 3;
+        return 4 * (exponent - 1) + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < 4) {
+            return index;
+        }
+        int exponent = index / 4 + 1;
+        long lower = (long) (4 + index % 4) << (exponent - 2);
+        return lower + (1L << (exponent - 2)) - 1;
+    }
+}
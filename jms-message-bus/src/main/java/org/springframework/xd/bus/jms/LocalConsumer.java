@@ -0,0 +1,187 @@
+package org.springframework.xd.bus.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The in-memory side of a consumer binding, through which producers bound in the same JVM
+ * deliver messages without going through the broker. Messages are queued in a bounded queue
+ * and drained into the module input channel by {@code concurrency} threads; the queue and the
+ * threads are only created when a producer first offers a message.
+ * <p>
+ * {@link #offer(Message, MessageHandler)} never blocks: when the queue is full, or the consumer
+ * is stopped, it returns {@code false} and the producer sends through the broker instead. A
+ * message the module fails to accept is handed to the fallback handler it was offered with,
+ * which sends it through the broker, so that it gets the consumer binding's broker side
+ * handling, retries and dead lettering included, rather than being lost. On {@link #stop()}
+ * the threads deliver what is left in the queue before they exit.
+ *
+ * @since 1.1
+ */
+public class LocalConsumer {
+    private static Logger logger = LoggerFactory.getLogger(LocalConsumer.class);
+    private static final long POLL_TIMEOUT = 100;
+    private static final long SHUTDOWN_TIMEOUT = 5000;
+    private final String name;
+    private final MessageChannel moduleInputChannel;
+    private final int capacity;
+    private final int concurrency;
+    private volatile BlockingQueue<Delivery> queue;
+    private volatile BindingMetrics metrics;
+    private volatile boolean active = true;
+    private volatile ExecutorService executorService;
+
+    public LocalConsumer(String name, MessageChannel moduleInputChannel, int capacity, int concurrency) {
+        Assert.notNull(moduleInputChannel, "moduleInputChannel must not be null");
+        Assert.isTrue(capacity > 0, "capacity must be greater than 0");
+        Assert.isTrue(concurrency > 0, "concurrency must be greater than 0");
+        this.name = name;
+        this.moduleInputChannel = moduleInputChannel;
+        this.capacity = capacity;
+        this.concurrency = concurrency;
+    }
+
+    public void setMetrics(BindingMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Queue a message for the module.
+     *
+     * @param fallback the handler sending the message through the broker if the module fails
+     * to accept it
+     * @return whether the message was accepted
+     */
+    public boolean offer(Message<?> message, MessageHandler fallback) {
+        if (!this.active) {
+            return false;
+        }
+        if (this.executorService == null) {
+            startDrainers();
+        }
+        BlockingQueue<Delivery> queue = this.queue;
+        Delivery delivery = new Delivery(message, fallback);
+        if (queue == null || !queue.offer(delivery)) {
+            return false;
+        }
+        // stopped while queueing: take the message back unless a drainer already has it
+        return this.active || !queue.remove(delivery);
+    }
+
+    /**
+     * Stop accepting messages, deliver the queued ones and stop the drain threads.
+     */
+    public synchronized void stop() {
+        this.active = false;
+        if (this.executorService != null) {
+            this.executorService.shutdown();
+            try {
+                if (!this.executorService.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Local consumer {} did not drain its queue within {} ms", this.name,
+                            SHUTDOWN_TIMEOUT);
+                    this.executorService.shutdownNow();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public MessageChannel getModuleInputChannel() {
+        return this.moduleInputChannel;
+    }
+
+    /**
+     * @return the number of messages queued for the module
+     */
+    public int getQueueSize() {
+        BlockingQueue<Delivery> queue = this.queue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    private synchronized void startDrainers() {
+        if (this.executorService != null || !this.active) {
+            return;
+        }
+        this.queue = new ArrayBlockingQueue<Delivery>(this.capacity);
+        ExecutorService executorService = Executors.newFixedThreadPool(this.concurrency,
+                new CustomizableThreadFactory("local." + this.name + "-"));
+        for (int i = 0; i < this.concurrency; i++) {
+            executorService.execute(new Drainer());
+        }
+        this.executorService = executorService;
+    }
+
+    private void deliver(Delivery delivery) {
+        Message<?> message = delivery.message;
+        BindingMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        try {
+            moduleInputChannel.send(message);
+            if (metrics != null) {
+                metrics.recordTransit(delivery.offerTime);
+                metrics.recordMessage(System.nanoTime() - start);
+            }
+        }
+        catch (RuntimeException e) {
+            if (metrics != null) {
+                metrics.recordError();
+            }
+            logger.warn("Local consumer " + name + " failed to deliver message; sending it through the broker", e);
+            try {
+                delivery.fallback.handleMessage(message);
+            }
+            catch (RuntimeException fallbackException) {
+                logger.error("Local consumer " + name + " failed to send undelivered message through the broker; "
+                        + "the message is lost", fallbackException);
+            }
+        }
+    }
+
+    private class Drainer implements Runnable {
+
+        @Override
+        public void run() {
+            while (active || !queue.isEmpty()) {
+                Delivery delivery;
+                try {
+                    delivery = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (delivery != null) {
+                    deliver(delivery);
+                }
+            }
+        }
+    }
+
+    /**
+     * A queued message, the handler that sends it through the broker instead and the time it
+     * was queued, from which its transit time is measured.
+     */
+    private static class Delivery {
+        private final Message<?> message;
+        private final MessageHandler fallback;
+        private final long offerTime = System.currentTimeMillis();
+
+        private Delivery(Message<?> message, MessageHandler fallback) {
+            this.message = message;
+            this.fallback = fallback;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.springframework.xd.bus.jms;
+
+import org.springframework.integration.endpoint.AbstractEndpoint;
+import org.springframework.jms.listener.AbstractMessageListenerContainer;
+import org.springframework.util.Assert;
+
+/**
+ * An endpoint that starts and stops a message listener container whose listener is already
+ * configured. The container is initialized, and so connects to the broker, when the endpoint
+ * is started rather than when it is created; stopping the endpoint shuts the container down,
+ * closing its consumers so that messages they prefetched go back to the broker, and starting
+ * it again initializes it anew.
+ *
+ * @since 1.1
+ */
+public class MessageListenerContainerEndpoint extends AbstractEndpoint {
+    private final AbstractMessageListenerContainer listenerContainer;
+
+    public MessageListenerContainerEndpoint(AbstractMessageListenerContainer listenerContainer) {
+        Assert.notNull(listenerContainer, "listenerContainer must not be null");
+        this.listenerContainer = listenerContainer;
+    }
+
+    public AbstractMessageListenerContainer getListenerContainer() {
+        return listenerContainer;
+    }
+
+    @Override
+    public String getComponentType() {
+        return "jms:message-driven-channel-adapter";
+    }
+
+    @Override
+    protected void doStart() {
+        if (!listenerContainer.isActive()) {
+            listenerContainer.afterPropertiesSet();
+        }
+        if (!listenerContainer.isRunning()) {
+            listenerContainer.start();
+        }
+    }
+
+    @Override
+    protected void doStop() {
+        listenerContainer.shutdown();
+    }
+}
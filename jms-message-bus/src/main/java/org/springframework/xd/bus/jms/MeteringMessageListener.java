@@ -0,0 +1,55 @@
+package org.springframework.xd.bus.jms;
+
+import org.springframework.jms.listener.SessionAwareMessageListener;
+import org.springframework.util.Assert;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+/**
+ * Wraps the listener of a consumer binding to record its {@link BindingMetrics}.
+ *
+ * @since 1.1
+ */
+public class MeteringMessageListener implements SessionAwareMessageListener<Message> {
+    private final SessionAwareMessageListener<Message> delegate;
+    private final BindingMetrics metrics;
+
+    public MeteringMessageListener(SessionAwareMessageListener<Message> delegate, BindingMetrics metrics) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.notNull(metrics, "metrics must not be null");
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onMessage(Message message, Session session) throws JMSException {
+        recordReceipt(message, this.metrics);
+        long start = System.nanoTime();
+        try {
+            this.delegate.onMessage(message, session);
+        }
+        catch (JMSException e) {
+            this.metrics.recordError();
+            throw e;
+        }
+        catch (RuntimeException e) {
+            this.metrics.recordError();
+            throw e;
+        }
+        this.metrics.recordMessage(System.nanoTime() - start);
+    }
+
+    /**
+     * Record the redelivery flag and transit time of a received message.
+     */
+    static void recordReceipt(Message message, BindingMetrics metrics) throws JMSException {
+        if (message.getJMSRedelivered()) {
+            metrics.recordRedelivery();
+        }
+        if (message.propertyExists(BindingMetrics.SEND_TIME_HEADER)) {
+            metrics.recordTransit(message.getLongProperty(BindingMetrics.SEND_TIME_HEADER));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package org.springframework.xd.bus.jms;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Strategy for compressing encoded payloads on the bus. The {@link #getName() name} travels
+ * with each compressed message, so a consumer must have a compressor of the same name
+ * registered to read it.
+ *
+ * @since 1.1
+ */
+public interface PayloadCompressor {
+
+    /**
+     * @return the name identifying this compression format on the wire
+     */
+    String getName();
+
+    /**
+     * Compress {@code length} bytes of {@code data} starting at {@code offset} into {@code out}.
+     */
+    void compress(byte[] data, int offset, int length, OutputStream out) throws IOException;
+
+    /**
+     * Decompress {@code length} bytes of {@code data} starting at {@code offset}.
+     */
+    byte[] decompress(byte[] data, int offset, int length) throws IOException;
+}
@@ -0,0 +1,107 @@
+package org.springframework.xd.bus.jms;
+
+import org.springframework.jms.listener.SessionAwareMessageListener;
+import org.springframework.util.Assert;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+/**
+ * Wraps the listener of a queue consumer binding to retry messages the module fails to accept
+ * without holding up the listener thread. A failed message is handed to a
+ * {@link FailedMessageRouter}, which sends a copy back to the queue for the broker's scheduler
+ * to deliver again after an exponential back off, or to the dead letter queue after
+ * {@code maxAttempts}, while the consumer goes on with the messages behind it.
+ * <p>
+ * The listener must run in a transacted session: the copy is sent in the session the message
+ * was received in, so the send and the acknowledgement of the original commit together. If the
+ * copy cannot be sent, or the message is not an ActiveMQ message the router can copy, the
+ * failure is thrown, the container rolls the session back and the broker redelivers the
+ * original. Retried messages go to the back of the queue, so they lose their order relative to
+ * later messages.
+ *
+ * @since 1.1
+ */
+public class RetryingMessageListener implements SessionAwareMessageListener<Message> {
+    /**
+     * Property carrying the delivery attempt of a retried message, starting at 2.
+     */
+    public static final String ATTEMPT_PROPERTY = FailedMessageRouter.ATTEMPT_PROPERTY;
+    /**
+     * Property carrying the last failure of a dead lettered message.
+     */
+    public static final String EXCEPTION_PROPERTY = FailedMessageRouter.EXCEPTION_PROPERTY;
+    private final SessionAwareMessageListener<Message> delegate;
+    private final FailedMessageRouter router;
+
+    /**
+     * @param delegate the listener publishing to the module
+     * @param router the router retrying or dead lettering failed messages
+     */
+    public RetryingMessageListener(SessionAwareMessageListener<Message> delegate, FailedMessageRouter router) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.notNull(router, "router must not be null");
+        this.delegate = delegate;
+        this.router = router;
+    }
+
+    /**
+     * @param delegate the listener publishing to the module
+     * @param retryDestination the queue retried messages are sent back to
+     * @param deadLetterDestination the queue messages are sent to after the last attempt
+     * @param maxAttempts the number of delivery attempts, including the first
+     * @param initialInterval the delay in milliseconds before the first retry
+     * @param multiplier the factor by which the delay grows with each retry
+     * @param maxInterval the maximum delay in milliseconds
+     */
+    public RetryingMessageListener(SessionAwareMessageListener<Message> delegate, Destination retryDestination,
+                                   Destination deadLetterDestination, int maxAttempts, long initialInterval,
+                                   double multiplier, long maxInterval) {
+        this(delegate, new FailedMessageRouter(retryDestination, deadLetterDestination, maxAttempts,
+                initialInterval, multiplier, maxInterval));
+    }
+
+    public void setMetrics(BindingMetrics metrics) {
+        this.router.setMetrics(metrics);
+    }
+
+    @Override
+    public void onMessage(Message message, Session session) throws JMSException {
+        try {
+            this.delegate.onMessage(message, session);
+        }
+        catch (JMSException e) {
+            if (!this.router.route(message, session, e)) {
+                throw e;
+            }
+        }
+        catch (RuntimeException e) {
+            if (!this.router.route(message, session, e)) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return the delay in milliseconds before the retry following the given attempt
+     */
+    long getDelay(int attempt) {
+        return this.router.getDelay(attempt);
+    }
+
+    /**
+     * @return the number of messages sent back to the queue for another attempt
+     */
+    public long getRetries() {
+        return this.router.getRetries();
+    }
+
+    /**
+     * @return the number of messages sent to the dead letter queue
+     */
+    public long getDeadLetters() {
+        return this.router.getDeadLetters();
+    }
+}
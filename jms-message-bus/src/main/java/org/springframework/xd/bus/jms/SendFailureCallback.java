@@ -0,0 +1,17 @@
+package org.springframework.xd.bus.jms;
+
+/**
+ * Notified when a message sent asynchronously by a producer binding could not be delivered to
+ * the broker. Asynchronous sends return before the broker has accepted the message, so such
+ * failures cannot be reported to the sending module.
+ *
+ * @since 1.1
+ */
+public interface SendFailureCallback {
+
+    /**
+     * @param bindingName the producer binding, {@code "outbound.<name>"}
+     * @param cause the failure reported by the connection
+     */
+    void onSendFailure(String bindingName, Exception cause);
+}
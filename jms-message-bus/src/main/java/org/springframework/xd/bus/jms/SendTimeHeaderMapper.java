@@ -0,0 +1,49 @@
+package org.springframework.xd.bus.jms;
+
+import org.springframework.integration.jms.DefaultJmsHeaderMapper;
+import org.springframework.messaging.MessageHeaders;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.util.Map;
+
+/**
+ * Maps message headers to and from JMS properties like the {@link DefaultJmsHeaderMapper}, and
+ * keeps the {@value BindingMetrics#SEND_TIME_HEADER} property on the bus. A mapper that stamps
+ * sets the property to the current time on every message it maps before the message is sent,
+ * so producers record their send time without copying the module's message; on receive the
+ * property is left out of the headers, so it does not travel on with the message to the next
+ * module or out of the stream.
+ *
+ * @since 1.1
+ */
+public class SendTimeHeaderMapper extends DefaultJmsHeaderMapper {
+    private final boolean stamp;
+
+    /**
+     * @param stamp whether to set the send time on outgoing messages
+     */
+    public SendTimeHeaderMapper(boolean stamp) {
+        this.stamp = stamp;
+    }
+
+    @Override
+    public void fromHeaders(MessageHeaders headers, Message jmsMessage) {
+        super.fromHeaders(headers, jmsMessage);
+        if (this.stamp) {
+            try {
+                jmsMessage.setLongProperty(BindingMetrics.SEND_TIME_HEADER, System.currentTimeMillis());
+            }
+            catch (JMSException e) {
+                // only the transit time of this message goes unrecorded
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> toHeaders(Message jmsMessage) {
+        Map<String, Object> headers = super.toHeaders(jmsMessage);
+        headers.remove(BindingMetrics.SEND_TIME_HEADER);
+        return headers;
+    }
+}
@@ -0,0 +1,44 @@
+package org.springframework.xd.bus.jms;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spread over several cells, each on its own cache line, so that threads updating
+ * it concurrently rarely contend. Threads pick a cell by their id; reads sum all cells.
+ *
+ * @since 1.1
+ */
+public class StripedCounter {
+    /**
+     * Cells are {@value} longs (a 64 byte cache line) apart.
+     */
+    static final int PADDING = 8;
+    static final int STRIPES = stripes();
+    static final int STRIPE_MASK = STRIPES - 1;
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        this.cells.getAndAdd(stripe() * PADDING, delta);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += this.cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    static int stripe() {
+        return (int) Thread.currentThread().getId() & STRIPE_MASK;
+    }
+
+    private static int stripes() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 64);
+        return Integer.highestOneBit(processors * 2 - 1);
+    }
+}
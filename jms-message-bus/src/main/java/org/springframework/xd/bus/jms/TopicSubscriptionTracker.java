@@ -0,0 +1,138 @@
+package org.springframework.xd.bus.jms;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.util.Assert;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks whether bus topics have subscribers, so that pub/sub producers can skip publishing
+ * while nothing taps them.
+ * <p>
+ * Subscriptions are known from two sources. Pub/sub consumers bound on this bus are
+ * {@link #addLocalSubscriber(String) registered} synchronously, so a local tap sees the very
+ * next message. Subscribers anywhere on the broker are learned from ActiveMQ consumer
+ * advisories, whose {@value #CONSUMER_COUNT_PROPERTY} property carries the topic's current
+ * number of consumers. Until the first advisory for a topic arrives only local subscribers
+ * count. If advisories are not available, every topic is considered subscribed.
+ *
+ * @since 1.1
+ */
+public class TopicSubscriptionTracker implements DisposableBean {
+    static final String ADVISORY_TOPIC_PREFIX = "ActiveMQ.Advisory.Consumer.Topic.";
+    static final String CONSUMER_COUNT_PROPERTY = "consumerCount";
+    private static Logger logger = LoggerFactory.getLogger(TopicSubscriptionTracker.class);
+    private final ConnectionFactory connectionFactory;
+    private final ConcurrentMap<String, Subscriptions> topics = new ConcurrentHashMap<String, Subscriptions>();
+    private volatile boolean advisoriesAvailable = true;
+    private Connection connection;
+
+    public TopicSubscriptionTracker(ConnectionFactory connectionFactory) {
+        Assert.notNull(connectionFactory, "connectionFactory must not be null");
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Start following the broker's consumer advisories for a topic.
+     */
+    public void track(String topicName) {
+        if (getSubscriptions(topicName).advisorySession == null && this.advisoriesAvailable) {
+            subscribeToAdvisories(topicName);
+        }
+    }
+
+    /**
+     * @return whether the topic has a subscriber bound on this bus or known to the broker
+     */
+    public boolean hasSubscribers(String topicName) {
+        if (!this.advisoriesAvailable) {
+            return true;
+        }
+        Subscriptions subscriptions = this.topics.get(topicName);
+        return subscriptions != null
+                && (subscriptions.localSubscribers.get() > 0 || subscriptions.brokerSubscribers > 0);
+    }
+
+    public void addLocalSubscriber(String topicName) {
+        getSubscriptions(topicName).localSubscribers.incrementAndGet();
+    }
+
+    public void removeLocalSubscriber(String topicName) {
+        Subscriptions subscriptions = this.topics.get(topicName);
+        if (subscriptions != null) {
+            subscriptions.localSubscribers.decrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        for (Subscriptions subscriptions : this.topics.values()) {
+            JmsUtils.closeSession(subscriptions.advisorySession);
+            subscriptions.advisorySession = null;
+        }
+        JmsUtils.closeConnection(this.connection, true);
+        this.connection = null;
+    }
+
+    private Subscriptions getSubscriptions(String topicName) {
+        Subscriptions subscriptions = this.topics.get(topicName);
+        if (subscriptions == null) {
+            Subscriptions created = new Subscriptions();
+            subscriptions = this.topics.putIfAbsent(topicName, created);
+            if (subscriptions == null) {
+                subscriptions = created;
+            }
+        }
+        return subscriptions;
+    }
+
+    private synchronized void subscribeToAdvisories(String topicName) {
+        final Subscriptions subscriptions = getSubscriptions(topicName);
+        if (subscriptions.advisorySession != null || !this.advisoriesAvailable) {
+            return;
+        }
+        try {
+            if (this.connection == null) {
+                this.connection = this.connectionFactory.createConnection();
+                this.connection.start();
+            }
+            Session session = this.connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            session.createConsumer(session.createTopic(ADVISORY_TOPIC_PREFIX + topicName))
+                    .setMessageListener(new MessageListener() {
+                        @Override
+                        public void onMessage(Message message) {
+                            try {
+                                if (message.propertyExists(CONSUMER_COUNT_PROPERTY)) {
+                                    subscriptions.brokerSubscribers = message.getIntProperty(CONSUMER_COUNT_PROPERTY);
+                                }
+                            }
+                            catch (JMSException e) {
+                                logger.warn("Failed to read consumer advisory", e);
+                            }
+                        }
+                    });
+            subscriptions.advisorySession = session;
+        }
+        catch (JMSException e) {
+            logger.warn("Consumer advisories are not available; publishing to all topics", e);
+            this.advisoriesAvailable = false;
+        }
+    }
+
+    private static class Subscriptions {
+        private final AtomicInteger localSubscribers = new AtomicInteger();
+        private volatile int brokerSubscribers;
+        private Session advisorySession;
+    }
+}
@@ -0,0 +1,49 @@
+package org.springframework.xd.bus.jms;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.xd.dirt.integration.bus.serializer.kryo.PojoCodec;
+
+import javax.jms.ConnectionFactory;
+
+/**
+ * Runs a {@link JmsMessageBus} against the embedded broker configured in
+ * {@code activemq-config.xml}.
+ *
+ * @since 1.1
+ */
+public abstract class AbstractJmsMessageBusTests {
+    private static ClassPathXmlApplicationContext brokerContext;
+    protected JmsMessageBus messageBus;
+
+    @BeforeClass
+    public static void startBroker() {
+        brokerContext = new ClassPathXmlApplicationContext("/META-INF/spring-xd/transports/activemq-config.xml");
+    }
+
+    @Before
+    public void createMessageBus() {
+        messageBus = new JmsMessageBus(getConnectionFactory(), new PojoCodec());
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.refresh();
+        messageBus.setApplicationContext(context);
+    }
+
+    @After
+    public void destroyMessageBus() throws Exception {
+        messageBus.destroy();
+    }
+
+    @AfterClass
+    public static void stopBroker() {
+        brokerContext.close();
+    }
+
+    protected static ConnectionFactory getConnectionFactory() {
+        return brokerContext.getBean("jmsConnectionFactory", ConnectionFactory.class);
+    }
+}
@@ -0,0 +1,184 @@
+package org.springframework.xd.bus.jms;
+
+import org.junit.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exercises batching producers, which commit by size, by timeout and when the bindings stop,
+ * and batching consumers: the headers of batched messages, and the retry and dead lettering of
+ * batches the module fails to accept.
+ *
+ * @since 1.1
+ */
+public class JmsMessageBusBatchingTests extends AbstractJmsMessageBusTests {
+    private static final int MESSAGES = 5;
+
+    @Test
+    public void testProducerCommitsFullBatch() throws Exception {
+        Properties producerProperties = batchingProperties();
+        producerProperties.setProperty("batchTimeout", "60000");
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        messageBus.bindProducer("bysize", moduleOutputChannel, producerProperties);
+        JmsTemplate template = new JmsTemplate(getConnectionFactory());
+        template.setReceiveTimeout(500);
+
+        send(moduleOutputChannel, MESSAGES - 1);
+        assertNull("a partial batch was committed", template.receive("xdbus.bysize"));
+        send(moduleOutputChannel, 1);
+        template.setReceiveTimeout(5000);
+        assertEquals(MESSAGES, receive(template, "xdbus.bysize"));
+    }
+
+    @Test
+    public void testProducerCommitsPartialBatchAfterTimeout() throws Exception {
+        Properties producerProperties = batchingProperties();
+        producerProperties.setProperty("batchSize", "100");
+        producerProperties.setProperty("batchTimeout", "1000");
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        messageBus.bindProducer("bytimeout", moduleOutputChannel, producerProperties);
+        JmsTemplate template = new JmsTemplate(getConnectionFactory());
+
+        long start = System.currentTimeMillis();
+        send(moduleOutputChannel, MESSAGES);
+        template.setReceiveTimeout(200);
+        assertNull("the batch was committed before its timeout", template.receive("xdbus.bytimeout"));
+        template.setReceiveTimeout(5000);
+        assertEquals(MESSAGES, receive(template, "xdbus.bytimeout"));
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+    }
+
+    @Test
+    public void testProducerCommitsPartialBatchOnStop() throws Exception {
+        Properties producerProperties = batchingProperties();
+        producerProperties.setProperty("batchSize", "100");
+        producerProperties.setProperty("batchTimeout", "60000");
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        messageBus.bindProducer("onstop", moduleOutputChannel, producerProperties);
+        JmsTemplate template = new JmsTemplate(getConnectionFactory());
+        template.setReceiveTimeout(500);
+
+        send(moduleOutputChannel, MESSAGES);
+        assertNull("a partial batch was committed", template.receive("xdbus.onstop"));
+        messageBus.stopBindings();
+        template.setReceiveTimeout(5000);
+        assertEquals(MESSAGES, receive(template, "xdbus.onstop"));
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedWithHeaders() throws Exception {
+        Properties consumerProperties = batchingProperties();
+        consumerProperties.setProperty("maxAttempts", "2");
+        consumerProperties.setProperty("backOffInitialInterval", "100");
+        DirectChannel moduleInputChannel = new DirectChannel();
+        final AtomicInteger batches = new AtomicInteger();
+        final BlockingQueue<Message<?>> accepted = new LinkedBlockingQueue<Message<?>>();
+        moduleInputChannel.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                if (batches.incrementAndGet() == 1) {
+                    throw new MessagingException(message, "first batch fails");
+                }
+                accepted.add(message);
+            }
+        });
+        sendMessages("batched");
+        messageBus.bindConsumer("batched", moduleInputChannel, consumerProperties);
+
+        int received = 0;
+        while (received < MESSAGES) {
+            Message<?> batch = accepted.poll(10, TimeUnit.SECONDS);
+            assertNotNull("the failed batch was not retried", batch);
+            List<?> payloads = (List<?>) batch.getPayload();
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> headers = (List<Map<String, Object>>) batch.getHeaders()
+                    .get(BatchingJmsInboundEndpoint.BATCH_HEADERS);
+            assertEquals(payloads.size(), headers.size());
+            for (int i = 0; i < payloads.size(); i++) {
+                assertEquals("message-" + headers.get(i).get("index"), payloads.get(i));
+                assertEquals(2, headers.get(i).get(RetryingMessageListener.ATTEMPT_PROPERTY));
+            }
+            received += payloads.size();
+        }
+        assertEquals(MESSAGES, received);
+        assertEquals(MESSAGES, messageBus.getRetries("inbound.batched"));
+        assertEquals(0, messageBus.getDeadLetters("inbound.batched"));
+    }
+
+    @Test
+    public void testFailedBatchIsDeadLettered() throws Exception {
+        DirectChannel moduleInputChannel = new DirectChannel();
+        moduleInputChannel.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                throw new MessagingException(message, "cannot handle batch");
+            }
+        });
+        sendMessages("poisoned");
+        messageBus.bindConsumer("poisoned", moduleInputChannel, batchingProperties());
+
+        JmsTemplate template = new JmsTemplate(getConnectionFactory());
+        template.setReceiveTimeout(10000);
+        for (int i = 0; i < MESSAGES; i++) {
+            javax.jms.Message deadLetter = template.receive("xdbus.poisoned.dlq");
+            assertNotNull("no message on the dead letter queue", deadLetter);
+            assertTrue(deadLetter.getStringProperty(RetryingMessageListener.EXCEPTION_PROPERTY)
+                    .contains("cannot handle batch"));
+        }
+        assertEquals(MESSAGES, messageBus.getDeadLetters("inbound.poisoned"));
+        messageBus.unbindConsumers("poisoned");
+        template.setReceiveTimeout(500);
+        assertNull("the batch was redelivered", template.receive("xdbus.poisoned"));
+    }
+
+    private static Properties batchingProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("batchingEnabled", "true");
+        properties.setProperty("batchSize", String.valueOf(MESSAGES));
+        properties.setProperty("batchTimeout", "500");
+        return properties;
+    }
+
+    private void sendMessages(String name) {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        messageBus.bindProducer(name, moduleOutputChannel, new Properties());
+        send(moduleOutputChannel, MESSAGES);
+    }
+
+    private static void send(DirectChannel moduleOutputChannel, int count) {
+        for (int i = 0; i < count; i++) {
+            moduleOutputChannel.send(MessageBuilder.withPayload("message-" + i).setHeader("index", i).build());
+        }
+    }
+
+    /**
+     * Receive from the queue until it stays empty for the template's receive timeout.
+     *
+     * @return the number of messages received
+     */
+    private static int receive(JmsTemplate template, String queue) {
+        int received = 0;
+        while (template.receive(queue) != null) {
+            received++;
+            template.setReceiveTimeout(500);
+        }
+        return received;
+    }
+}
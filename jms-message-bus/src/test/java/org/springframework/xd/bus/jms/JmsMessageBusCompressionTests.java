@@ -0,0 +1,67 @@
+package org.springframework.xd.bus.jms;
+
+import org.junit.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends payloads above and below the compression threshold through a compressing binding and
+ * checks that they arrive intact and are counted.
+ *
+ * @since 1.1
+ */
+public class JmsMessageBusCompressionTests extends AbstractJmsMessageBusTests {
+
+    @Test
+    public void testPayloadsAboveThresholdAreCompressed() throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        DirectChannel moduleInputChannel = new DirectChannel();
+        final List<Object> received = new CopyOnWriteArrayList<Object>();
+        final CountDownLatch latch = new CountDownLatch(3);
+        moduleInputChannel.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                received.add(message.getPayload());
+                latch.countDown();
+            }
+        });
+
+        Properties producerProperties = new Properties();
+        producerProperties.setProperty("compress", "true");
+        producerProperties.setProperty("compressionThreshold", "256");
+        messageBus.bindConsumer("compressed", moduleInputChannel, new Properties());
+        messageBus.bindProducer("compressed", moduleOutputChannel, producerProperties);
+
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            json.append("{\"id\":").append(i).append(",\"name\":\"item\"},");
+        }
+        String large = json.append("{}]").toString();
+        byte[] largeBytes = large.getBytes("UTF-8");
+        moduleOutputChannel.send(MessageBuilder.withPayload(large).build());
+        moduleOutputChannel.send(MessageBuilder.withPayload("small").build());
+        moduleOutputChannel.send(MessageBuilder.withPayload(largeBytes).build());
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        assertEquals(large, received.get(0));
+        assertEquals("small", received.get(1));
+        assertEquals(large, new String((byte[]) received.get(2), "UTF-8"));
+        CompressionStatistics outbound = messageBus.getCompressionStatistics("outbound.compressed");
+        assertEquals(2, outbound.getCompressedMessages());
+        assertEquals(1, outbound.getUncompressedMessages());
+        assertTrue(outbound.getCompressionRatio() < 0.5);
+        assertEquals(2, messageBus.getCompressionStatistics("inbound.compressed").getDecompressedMessages());
+    }
+}
@@ -0,0 +1,55 @@
+package org.springframework.xd.bus.jms;
+
+import org.junit.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Exercises the per-binding delivery settings of producers.
+ *
+ * @since 1.1
+ */
+public class JmsMessageBusDeliveryTests extends AbstractJmsMessageBusTests {
+    private static final int MESSAGES = 1000;
+
+    @Test
+    public void testNonPersistentAsyncSend() throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        QueueChannel moduleInputChannel = new QueueChannel();
+        Properties producerProperties = new Properties();
+        producerProperties.setProperty("deliveryMode", "nonPersistent");
+        producerProperties.setProperty("asyncSend", "true");
+        producerProperties.setProperty("producerWindowSize", "65536");
+        messageBus.bindConsumer("async", moduleInputChannel, new Properties());
+        messageBus.bindProducer("async", moduleOutputChannel, producerProperties);
+
+        for (int i = 0; i < MESSAGES; i++) {
+            moduleOutputChannel.send(MessageBuilder.withPayload(i).build());
+        }
+        for (int i = 0; i < MESSAGES; i++) {
+            assertNotNull("message " + i + " not received", moduleInputChannel.receive(5000));
+        }
+        assertEquals(0, messageBus.getSendFailures("outbound.async"));
+    }
+
+    @Test
+    public void testExpiredMessagesAreDiscarded() throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        Properties producerProperties = new Properties();
+        producerProperties.setProperty("timeToLive", "50");
+        messageBus.bindProducer("expiring", moduleOutputChannel, producerProperties);
+        moduleOutputChannel.send(MessageBuilder.withPayload("stale").build());
+        Thread.sleep(200);
+
+        QueueChannel moduleInputChannel = new QueueChannel();
+        messageBus.bindConsumer("expiring", moduleInputChannel, new Properties());
+        assertNull(moduleInputChannel.receive(1000));
+    }
+}
@@ -0,0 +1,162 @@
+package org.springframework.xd.bus.jms;
+
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+import org.springframework.xd.dirt.integration.bus.serializer.kryo.PojoCodec;
+
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Verifies that a producer with {@code directBindingAllowed} delivers to a consumer bound on
+ * the same bus through memory, and through the broker once that consumer is gone, when the
+ * module fails to accept a message or when delivery is persistent.
+ *
+ * @since 1.1
+ */
+public class JmsMessageBusDirectBindingTests extends AbstractJmsMessageBusTests {
+
+    @Test
+    public void testDirectBindingFallsBackToBroker() throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        QueueChannel moduleInputChannel = new QueueChannel();
+        Properties producerProperties = new Properties();
+        producerProperties.setProperty("directBindingAllowed", "true");
+        producerProperties.setProperty("deliveryMode", "nonPersistent");
+        messageBus.bindConsumer("direct", moduleInputChannel, new Properties());
+        messageBus.bindProducer("direct", moduleOutputChannel, producerProperties);
+
+        Payload payload = new Payload("local");
+        moduleOutputChannel.send(MessageBuilder.withPayload(payload).build());
+        Message<?> received = moduleInputChannel.receive(5000);
+        assertSame("payload should not have been serialized", payload, received.getPayload());
+
+        messageBus.unbindConsumer("direct", moduleInputChannel);
+        JmsMessageBus remoteBus = new JmsMessageBus(getConnectionFactory(), new PojoCodec());
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.refresh();
+        remoteBus.setApplicationContext(context);
+        try {
+            QueueChannel remoteInputChannel = new QueueChannel();
+            remoteBus.bindConsumer("direct", remoteInputChannel, new Properties());
+            payload = new Payload("remote");
+            moduleOutputChannel.send(MessageBuilder.withPayload(payload).build());
+            received = remoteInputChannel.receive(5000);
+            assertNotSame(payload, received.getPayload());
+            assertEquals("remote", ((Payload) received.getPayload()).getValue());
+        }
+        finally {
+            remoteBus.destroy();
+        }
+    }
+
+    @Test
+    public void testPersistentProducerSendsThroughBroker() throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        QueueChannel moduleInputChannel = new QueueChannel();
+        Properties producerProperties = new Properties();
+        producerProperties.setProperty("directBindingAllowed", "true");
+        messageBus.bindConsumer("persistent", moduleInputChannel, new Properties());
+        messageBus.bindProducer("persistent", moduleOutputChannel, producerProperties);
+
+        Payload payload = new Payload("persistent");
+        moduleOutputChannel.send(MessageBuilder.withPayload(payload).build());
+        Message<?> received = moduleInputChannel.receive(5000);
+        assertNotSame("the default delivery mode is persistent", payload, received.getPayload());
+    }
+
+    @Test
+    public void testInstancesShareLocalDelivery() throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        QueueChannel firstInputChannel = new QueueChannel();
+        QueueChannel secondInputChannel = new QueueChannel();
+        messageBus.bindConsumer("instances", firstInputChannel, new Properties());
+        messageBus.bindConsumer("instances", secondInputChannel, new Properties());
+        messageBus.bindProducer("instances", moduleOutputChannel, directProducerProperties());
+
+        Payload payload = new Payload("local");
+        for (int i = 0; i < 10; i++) {
+            moduleOutputChannel.send(MessageBuilder.withPayload(payload).build());
+        }
+        assertEquals(5, drainLocal(firstInputChannel, payload));
+        assertEquals(5, drainLocal(secondInputChannel, payload));
+    }
+
+    @Test
+    public void testFailedLocalDeliveryIsSentThroughBroker() throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        DirectChannel moduleInputChannel = new DirectChannel();
+        final AtomicInteger attempts = new AtomicInteger();
+        final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+        moduleInputChannel.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new MessagingException(message, "first attempt fails");
+                }
+                received.add(message.getPayload());
+            }
+        });
+        messageBus.bindConsumer("failing", moduleInputChannel, new Properties());
+        messageBus.bindProducer("failing", moduleOutputChannel, directProducerProperties());
+
+        Payload payload = new Payload("retried");
+        moduleOutputChannel.send(MessageBuilder.withPayload(payload).build());
+        Object redelivered = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull("the failed message was lost", redelivered);
+        assertNotSame("the failed message should have gone through the broker", payload, redelivered);
+        assertEquals("retried", ((Payload) redelivered).getValue());
+        assertEquals(2, attempts.get());
+        assertEquals(1, messageBus.getBindingMetrics("inbound.failing").getErrors());
+    }
+
+    private static Properties directProducerProperties() {
+        Properties producerProperties = new Properties();
+        producerProperties.setProperty("directBindingAllowed", "true");
+        producerProperties.setProperty("deliveryMode", "nonPersistent");
+        return producerProperties;
+    }
+
+    private static int drainLocal(QueueChannel channel, Payload payload) {
+        int count = 0;
+        Message<?> message;
+        while ((message = channel.receive(1000)) != null) {
+            assertSame("payload should not have been serialized", payload, message.getPayload());
+            count++;
+        }
+        return count;
+    }
+
+    public static class Payload {
+        private String value;
+
+        public Payload() {
+        }
+
+        public Payload(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+}
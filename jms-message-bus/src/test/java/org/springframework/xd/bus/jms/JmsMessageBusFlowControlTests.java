@@ -0,0 +1,80 @@
+package org.springframework.xd.bus.jms;
+
+import org.junit.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exercises consumer prefetch and in-flight limits.
+ *
+ * @since 1.1
+ */
+public class JmsMessageBusFlowControlTests extends AbstractJmsMessageBusTests {
+    private static final int MESSAGES = 200;
+
+    @Test
+    public void testInFlightLimitAcrossConcurrentConsumers() throws Exception {
+        Properties consumerProperties = new Properties();
+        consumerProperties.setProperty("concurrency", "4");
+        consumerProperties.setProperty("prefetchSize", "1");
+        consumerProperties.setProperty("maxInFlight", "2");
+        SlowHandler handler = sendAndConsume("inflight", consumerProperties);
+        assertTrue("more than 2 messages in flight: " + handler.maxInFlight, handler.maxInFlight.get() <= 2);
+    }
+
+    @Test
+    public void testAdaptivePrefetchDeliversAll() throws Exception {
+        Properties consumerProperties = new Properties();
+        consumerProperties.setProperty("concurrency", "2");
+        consumerProperties.setProperty("adaptivePrefetch", "true");
+        consumerProperties.setProperty("prefetchSize", "64");
+        consumerProperties.setProperty("targetLatency", "1");
+        sendAndConsume("adaptive", consumerProperties);
+    }
+
+    private SlowHandler sendAndConsume(String name, Properties consumerProperties) throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        DirectChannel moduleInputChannel = new DirectChannel();
+        SlowHandler handler = new SlowHandler();
+        moduleInputChannel.subscribe(handler);
+        messageBus.bindConsumer(name, moduleInputChannel, consumerProperties);
+        messageBus.bindProducer(name, moduleOutputChannel, new Properties());
+        for (int i = 0; i < MESSAGES; i++) {
+            moduleOutputChannel.send(MessageBuilder.withPayload(i).build());
+        }
+        assertTrue("Timed out waiting for messages", handler.latch.await(30, TimeUnit.SECONDS));
+        return handler;
+    }
+
+    private static class SlowHandler implements MessageHandler {
+        private final CountDownLatch latch = new CountDownLatch(MESSAGES);
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public void handleMessage(Message<?> message) throws MessagingException {
+            int current = inFlight.incrementAndGet();
+            int max;
+            while (current > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, current)) {
+            }
+            try {
+                Thread.sleep(5);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            latch.countDown();
+        }
+    }
+}
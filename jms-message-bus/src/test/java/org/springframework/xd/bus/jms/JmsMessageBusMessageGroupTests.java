@@ -0,0 +1,73 @@
+package org.springframework.xd.bus.jms;
+
+import org.junit.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that messages stamped with a {@code JMSXGroupID} keep their order per key when a
+ * queue is drained by several concurrent consumers.
+ *
+ * @since 1.1
+ */
+public class JmsMessageBusMessageGroupTests extends AbstractJmsMessageBusTests {
+    private static final int KEYS = 10;
+    private static final int MESSAGES_PER_KEY = 200;
+    private static final int CONSUMERS = 4;
+
+    @Test
+    public void testOrderPreservedPerKeyWithConcurrentConsumers() throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        DirectChannel moduleInputChannel = new DirectChannel();
+        final ConcurrentMap<String, AtomicInteger> lastSequence = new ConcurrentHashMap<String, AtomicInteger>();
+        final AtomicInteger outOfOrder = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(KEYS * MESSAGES_PER_KEY);
+        moduleInputChannel.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                String key = (String) message.getHeaders().get("key");
+                int sequence = (Integer) message.getPayload();
+                lastSequence.putIfAbsent(key, new AtomicInteger(-1));
+                if (lastSequence.get(key).getAndSet(sequence) != sequence - 1) {
+                    outOfOrder.incrementAndGet();
+                }
+                // give other groups a chance to interleave
+                Thread.yield();
+                latch.countDown();
+            }
+        });
+
+        Properties consumerProperties = new Properties();
+        consumerProperties.setProperty("concurrency", String.valueOf(CONSUMERS));
+        messageBus.bindConsumer("groups", moduleInputChannel, consumerProperties);
+        Properties producerProperties = new Properties();
+        producerProperties.setProperty("groupKeyExpression", "headers['key']");
+        messageBus.bindProducer("groups", moduleOutputChannel, producerProperties);
+
+        for (int i = 0; i < MESSAGES_PER_KEY; i++) {
+            for (int k = 0; k < KEYS; k++) {
+                moduleOutputChannel.send(MessageBuilder.withPayload(i).setHeader("key", "key" + k).build());
+            }
+        }
+
+        assertTrue("Timed out waiting for messages", latch.await(30, TimeUnit.SECONDS));
+        assertEquals(KEYS, lastSequence.size());
+        assertEquals("Messages delivered out of order within a group", 0, outOfOrder.get());
+        for (AtomicInteger last : lastSequence.values()) {
+            assertEquals(MESSAGES_PER_KEY - 1, last.get());
+        }
+    }
+}
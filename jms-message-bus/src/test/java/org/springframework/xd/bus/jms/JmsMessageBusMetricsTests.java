@@ -0,0 +1,64 @@
+package org.springframework.xd.bus.jms;
+
+import org.junit.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies the metrics recorded for a producer and consumer binding.
+ *
+ * @since 1.1
+ */
+public class JmsMessageBusMetricsTests extends AbstractJmsMessageBusTests {
+    private static final int MESSAGES = 100;
+
+    @Test
+    public void testBindingMetrics() throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        messageBus.bindProducer("metered", moduleOutputChannel, new Properties());
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < MESSAGES; i++) {
+            moduleOutputChannel.send(MessageBuilder.withPayload(i).build());
+        }
+        long sent = System.currentTimeMillis();
+        BindingMetrics producerMetrics = messageBus.getBindingMetrics("outbound.metered");
+        assertEquals(MESSAGES, producerMetrics.getMessages());
+        assertEquals(0, producerMetrics.getErrors());
+        assertTrue(producerMetrics.getLatencyMicrosMax() > 0);
+        assertTrue(producerMetrics.getLatencyMicrosP50() <= producerMetrics.getLatencyMicrosMax());
+        assertEquals(MESSAGES, producerMetrics.getQueueDepth());
+
+        QueueChannel moduleInputChannel = new QueueChannel();
+        messageBus.bindConsumer("metered", moduleInputChannel, new Properties());
+        long bound = System.currentTimeMillis();
+        for (int i = 0; i < MESSAGES; i++) {
+            Message<?> received = moduleInputChannel.receive(5000);
+            assertNotNull(received);
+            assertFalse("the send time should not reach the module",
+                    received.getHeaders().containsKey(BindingMetrics.SEND_TIME_HEADER));
+        }
+        BindingMetrics consumerMetrics = messageBus.getBindingMetrics("inbound.metered");
+        // the listener records a message once the channel accepted it
+        for (int i = 0; i < 100 && consumerMetrics.getMessages() < MESSAGES; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(MESSAGES, consumerMetrics.getMessages());
+        assertEquals(0, consumerMetrics.getErrors());
+        assertEquals(0, consumerMetrics.getRedeliveries());
+        assertEquals(0, consumerMetrics.getRetries());
+        assertEquals(0, consumerMetrics.getDeadLetters());
+        // the messages waited on the queue until the consumer was bound
+        assertTrue(consumerMetrics.getTransitMillisMax() <= System.currentTimeMillis() - start);
+        assertTrue(consumerMetrics.getTransitMillisMax() >= bound - sent);
+        assertTrue(consumerMetrics.getTransitMillisP50() <= consumerMetrics.getTransitMillisMax());
+    }
+}
@@ -0,0 +1,117 @@
+package org.springframework.xd.bus.jms;
+
+import org.junit.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.messaging.Message;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Verifies that a partitioned producer sends all messages of a key to the same partition queue,
+ * {@code xdbus.<name>-<n>}, that it honors the standard XD partition selector properties, and that
+ * a partitioned consumer receives from its queue only.
+ *
+ * @since 1.1
+ */
+public class JmsMessageBusPartitionTests extends AbstractJmsMessageBusTests {
+    private static final int PARTITIONS = 3;
+    private static final int KEYS = 10;
+    private static final int MESSAGES_PER_KEY = 5;
+
+    @Test
+    public void testSameKeyGoesToSamePartition() throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        messageBus.bindProducer("partitioned", moduleOutputChannel, partitionedProducerProperties());
+        for (int i = 0; i < MESSAGES_PER_KEY; i++) {
+            for (int k = 0; k < KEYS; k++) {
+                moduleOutputChannel.send(MessageBuilder.withPayload("message-" + i).setHeader("key", "key-" + k)
+                        .build());
+            }
+        }
+
+        JmsTemplate template = new JmsTemplate(getConnectionFactory());
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int p = 0; p < PARTITIONS; p++) {
+            template.setReceiveTimeout(500);
+            javax.jms.Message message;
+            while ((message = template.receive("xdbus.partitioned-" + p)) != null) {
+                String key = message.getStringProperty("key");
+                assertNotNull(key);
+                assertEquals("key " + key + " was not sent to the partition of its hash",
+                        Math.abs(key.hashCode() % PARTITIONS), p);
+                counts.put(key, counts.containsKey(key) ? counts.get(key) + 1 : 1);
+            }
+        }
+        assertEquals(KEYS, counts.size());
+        for (int count : counts.values()) {
+            assertEquals(MESSAGES_PER_KEY, count);
+        }
+        assertNull("the producer sent to the unpartitioned queue", template.receive("xdbus.partitioned"));
+    }
+
+    @Test
+    public void testConsumerReceivesItsPartition() throws Exception {
+        QueueChannel moduleInputChannel = new QueueChannel();
+        Properties consumerProperties = new Properties();
+        consumerProperties.setProperty("partitionIndex", "1");
+        messageBus.bindConsumer("consumed", moduleInputChannel, consumerProperties);
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        messageBus.bindProducer("consumed", moduleOutputChannel, partitionedProducerProperties());
+
+        int expected = 0;
+        for (int k = 0; k < KEYS; k++) {
+            String key = "key-" + k;
+            moduleOutputChannel.send(MessageBuilder.withPayload(key).setHeader("key", key).build());
+            if (Math.abs(key.hashCode() % PARTITIONS) == 1) {
+                expected++;
+            }
+        }
+        for (int i = 0; i < expected; i++) {
+            Message<?> received = moduleInputChannel.receive(5000);
+            assertNotNull(received);
+            assertEquals(1, Math.abs(received.getPayload().hashCode() % PARTITIONS));
+        }
+        assertNull(moduleInputChannel.receive(500));
+    }
+
+    @Test
+    public void testPartitionSelectorExpression() throws Exception {
+        Properties producerProperties = new Properties();
+        producerProperties.setProperty("partitionKeyExpression", "headers['index']");
+        producerProperties.setProperty("partitionSelectorExpression", "intValue() + 1");
+        producerProperties.setProperty("nextModuleCount", String.valueOf(PARTITIONS));
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        messageBus.bindProducer("selected", moduleOutputChannel, producerProperties);
+        for (int i = 0; i < 2 * PARTITIONS; i++) {
+            moduleOutputChannel.send(MessageBuilder.withPayload("message-" + i).setHeader("index", i).build());
+        }
+
+        JmsTemplate template = new JmsTemplate(getConnectionFactory());
+        template.setReceiveTimeout(500);
+        int received = 0;
+        for (int p = 0; p < PARTITIONS; p++) {
+            javax.jms.Message message;
+            while ((message = template.receive("xdbus.selected-" + p)) != null) {
+                assertEquals((message.getIntProperty("index") + 1) % PARTITIONS, p);
+                received++;
+            }
+        }
+        assertEquals(2 * PARTITIONS, received);
+    }
+
+    private static Properties partitionedProducerProperties() {
+        Properties producerProperties = new Properties();
+        producerProperties.setProperty("partitionKeyExpression", "headers['key']");
+        producerProperties.setProperty("nextModuleCount", String.valueOf(PARTITIONS));
+        return producerProperties;
+    }
+}
@@ -0,0 +1,135 @@
+package org.springframework.xd.bus.jms;
+
+import org.apache.activemq.broker.BrokerRegistry;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.junit.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips request/reply bindings through the embedded broker under concurrent load. The
+ * latency of a round trip is measured by {@code JmsMessageBusRequestReplyBenchmark}.
+ *
+ * @since 1.1
+ */
+public class JmsMessageBusRequestReplyTests extends AbstractJmsMessageBusTests {
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 500;
+
+    @Test
+    public void testRequestReplyUnderConcurrentLoad() throws Exception {
+        final DirectChannel requests = new DirectChannel();
+        DirectChannel replies = new DirectChannel();
+        bindReplier("rr");
+
+        int total = THREADS * REQUESTS_PER_THREAD;
+        final Set<Object> answered = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+        final AtomicInteger duplicates = new AtomicInteger();
+        final AtomicInteger mismatched = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(total);
+        replies.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                if (!answered.add(message.getPayload())) {
+                    duplicates.incrementAndGet();
+                    return;
+                }
+                if (!message.getPayload().equals(message.getHeaders().get("expected"))) {
+                    mismatched.incrementAndGet();
+                }
+                latch.countDown();
+            }
+        });
+        Properties properties = new Properties();
+        properties.setProperty("concurrency", "4");
+        messageBus.bindRequestor("rr", requests, replies, properties);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        String payload = "request-" + thread + "-" + i;
+                        requests.send(MessageBuilder.withPayload(payload)
+                                .setHeader("expected", payload.toUpperCase()).build());
+                    }
+                }
+            });
+        }
+        assertTrue("Timed out waiting for replies", latch.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(total, answered.size());
+        assertEquals(0, mismatched.get());
+        assertEquals(0, duplicates.get());
+    }
+
+    @Test
+    public void testReplyQueueIsDeletedOnUnbind() throws Exception {
+        bindReplier("cleanup");
+        DirectChannel requests = new DirectChannel();
+        DirectChannel replies = new DirectChannel();
+        final CountDownLatch replied = new CountDownLatch(1);
+        replies.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                replied.countDown();
+            }
+        });
+        messageBus.bindRequestor("cleanup", requests, replies, new Properties());
+        requests.send(MessageBuilder.withPayload("ping").build());
+        assertTrue("Timed out waiting for the reply", replied.await(10, TimeUnit.SECONDS));
+        assertTrue("no reply queue", hasQueueStartingWith("xdbus.cleanup.replies."));
+
+        messageBus.unbindConsumer("cleanup", replies);
+        messageBus.unbindProducer("cleanup", requests);
+        assertFalse("the reply queue was left behind", hasQueueStartingWith("xdbus.cleanup.replies."));
+    }
+
+    /**
+     * Bind a replier that answers every request with its payload in upper case.
+     */
+    private void bindReplier(String name) {
+        DirectChannel replierRequests = new DirectChannel();
+        final DirectChannel replierReplies = new DirectChannel();
+        replierRequests.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                replierReplies.send(MessageBuilder.withPayload(((String) message.getPayload()).toUpperCase())
+                        .copyHeaders(message.getHeaders()).build());
+            }
+        });
+        Properties properties = new Properties();
+        properties.setProperty("concurrency", "4");
+        messageBus.bindReplier(name, replierRequests, replierReplies, properties);
+    }
+
+    private static boolean hasQueueStartingWith(String prefix) throws Exception {
+        for (ActiveMQDestination destination
+                : BrokerRegistry.getInstance().findFirst().getRegionBroker().getDestinationMap().keySet()) {
+            if (destination.isQueue() && destination.getPhysicalName().startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,161 @@
+package org.springframework.xd.bus.jms;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.listener.SessionAwareMessageListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+
+import javax.jms.JMSException;
+import javax.jms.Queue;
+import javax.jms.Session;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exercises broker redelivery of failed messages, consumer retries through scheduled redelivery
+ * and dead letter routing.
+ *
+ * @since 1.1
+ */
+public class JmsMessageBusRetryTests extends AbstractJmsMessageBusTests {
+
+    @Test
+    public void testPoisonMessageIsRetriedAndDeadLettered() throws Exception {
+        Properties consumerProperties = new Properties();
+        consumerProperties.setProperty("maxAttempts", "3");
+        consumerProperties.setProperty("backOffInitialInterval", "500");
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        DirectChannel moduleInputChannel = new DirectChannel();
+        final AtomicInteger poisonAttempts = new AtomicInteger();
+        final CountDownLatch healthy = new CountDownLatch(10);
+        moduleInputChannel.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                if ("poison".equals(message.getPayload())) {
+                    poisonAttempts.incrementAndGet();
+                    throw new MessagingException(message, "cannot handle poison");
+                }
+                healthy.countDown();
+            }
+        });
+        messageBus.bindConsumer("retry", moduleInputChannel, consumerProperties);
+        messageBus.bindProducer("retry", moduleOutputChannel, new Properties());
+        moduleOutputChannel.send(MessageBuilder.withPayload("poison").build());
+        for (int i = 0; i < 10; i++) {
+            moduleOutputChannel.send(MessageBuilder.withPayload("healthy").build());
+        }
+        // the healthy messages are not held up behind the back off of the poison message
+        assertTrue("healthy messages were blocked", healthy.await(400, TimeUnit.MILLISECONDS));
+
+        JmsTemplate template = new JmsTemplate(getConnectionFactory());
+        template.setReceiveTimeout(10000);
+        javax.jms.Message deadLetter = template.receive("xdbus.retry.dlq");
+        assertNotNull("no message on the dead letter queue", deadLetter);
+        assertEquals(3, deadLetter.getIntProperty(RetryingMessageListener.ATTEMPT_PROPERTY));
+        assertTrue(deadLetter.getStringProperty(RetryingMessageListener.EXCEPTION_PROPERTY)
+                .contains("cannot handle poison"));
+        assertEquals(3, poisonAttempts.get());
+        assertEquals(2, messageBus.getRetries("inbound.retry"));
+        assertEquals(1, messageBus.getDeadLetters("inbound.retry"));
+        assertEquals(1, messageBus.getBindingMetrics("inbound.retry").getDeadLetters());
+    }
+
+    @Test
+    public void testFailedMessageIsRedeliveredByDefault() throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        DirectChannel moduleInputChannel = new DirectChannel();
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch accepted = new CountDownLatch(1);
+        moduleInputChannel.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new MessagingException(message, "first attempt fails");
+                }
+                accepted.countDown();
+            }
+        });
+        Properties consumerProperties = new Properties();
+        consumerProperties.setProperty("maxAttempts", "1");
+        messageBus.bindConsumer("redelivered", moduleInputChannel, consumerProperties);
+        messageBus.bindProducer("redelivered", moduleOutputChannel, new Properties());
+        moduleOutputChannel.send(MessageBuilder.withPayload("fails once").build());
+
+        assertTrue("the failed message was not redelivered", accepted.await(10, TimeUnit.SECONDS));
+        assertEquals(2, attempts.get());
+        assertEquals(1, messageBus.getBindingMetrics("inbound.redelivered").getRedeliveries());
+        assertEquals(0, messageBus.getDeadLetters("inbound.redelivered"));
+    }
+
+    @Test
+    public void testMessageSurvivesFailedRetrySend() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final CountDownLatch accepted = new CountDownLatch(1);
+        final AtomicBoolean redelivered = new AtomicBoolean();
+        SessionAwareMessageListener<javax.jms.Message> module = new SessionAwareMessageListener<javax.jms.Message>() {
+            @Override
+            public void onMessage(javax.jms.Message message, Session session) throws JMSException {
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException("first attempt fails");
+                }
+                redelivered.set(message.getJMSRedelivered());
+                accepted.countDown();
+            }
+        };
+        // a queue the session cannot resolve, so sending the retry copy fails
+        Queue unusable = new Queue() {
+            @Override
+            public String getQueueName() throws JMSException {
+                throw new JMSException("unusable queue");
+            }
+        };
+        FailedMessageRouter router = new FailedMessageRouter(unusable, new ActiveMQQueue("xdbus.unsendable.dlq"),
+                3, 100, 2.0, 1000);
+        DefaultMessageListenerContainer container = new DefaultMessageListenerContainer();
+        container.setConnectionFactory(getConnectionFactory());
+        container.setDestination(new ActiveMQQueue("xdbus.unsendable"));
+        container.setSessionTransacted(true);
+        container.setMessageListener(new RetryingMessageListener(module, router));
+        container.afterPropertiesSet();
+        container.start();
+        try {
+            new JmsTemplate(getConnectionFactory()).convertAndSend("xdbus.unsendable", "survivor");
+            assertTrue("the message was lost", accepted.await(10, TimeUnit.SECONDS));
+            assertTrue(redelivered.get());
+            assertEquals(2, attempts.get());
+            assertEquals(0, router.getRetries());
+            assertEquals(0, router.getDeadLetters());
+        }
+        finally {
+            container.shutdown();
+        }
+    }
+
+    @Test
+    public void testExponentialBackOff() {
+        RetryingMessageListener listener = new RetryingMessageListener(
+                new SessionAwareMessageListener<javax.jms.Message>() {
+                    @Override
+                    public void onMessage(javax.jms.Message message, Session session) throws JMSException {
+                    }
+                }, new ActiveMQQueue("retry"), new ActiveMQQueue("retry.dlq"), 10, 100, 2.0, 1000);
+        assertEquals(100, listener.getDelay(1));
+        assertEquals(200, listener.getDelay(2));
+        assertEquals(800, listener.getDelay(4));
+        assertEquals(1000, listener.getDelay(5));
+        assertEquals(1000, listener.getDelay(9));
+    }
+}
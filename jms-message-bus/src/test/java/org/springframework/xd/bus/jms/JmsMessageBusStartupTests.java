@@ -0,0 +1,68 @@
+package org.springframework.xd.bus.jms;
+
+import org.junit.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessagingException;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exercises parallel and lazy starting of consumer bindings.
+ *
+ * @since 1.1
+ */
+public class JmsMessageBusStartupTests extends AbstractJmsMessageBusTests {
+    private static final int BINDINGS = 20;
+
+    @Test
+    public void testManyBindingsStartInParallel() throws Exception {
+        QueueChannel[] moduleInputChannels = new QueueChannel[BINDINGS];
+        for (int i = 0; i < BINDINGS; i++) {
+            moduleInputChannels[i] = new QueueChannel();
+            messageBus.bindConsumer("parallel" + i, moduleInputChannels[i], new Properties());
+            DirectChannel moduleOutputChannel = new DirectChannel();
+            messageBus.bindProducer("parallel" + i, moduleOutputChannel, new Properties());
+            moduleOutputChannel.send(MessageBuilder.withPayload(i).build());
+        }
+        for (int i = 0; i < BINDINGS; i++) {
+            Message<?> message = moduleInputChannels[i].receive(5000);
+            assertNotNull("binding " + i + " received nothing", message);
+            assertEquals(i, message.getPayload());
+        }
+    }
+
+    @Test
+    public void testLazyConsumerStartsWhenSubscribed() throws Exception {
+        Properties consumerProperties = new Properties();
+        consumerProperties.setProperty("lazyStart", "true");
+        DirectChannel moduleInputChannel = new DirectChannel();
+        messageBus.bindConsumer("lazy", moduleInputChannel, consumerProperties);
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        messageBus.bindProducer("lazy", moduleOutputChannel, new Properties());
+        moduleOutputChannel.send(MessageBuilder.withPayload("waiting").build());
+        Thread.sleep(300);
+        // not consumed: without a subscriber the delivery would have failed
+        assertEquals(0, messageBus.getBindingMetrics("inbound.lazy").getErrors());
+        assertEquals(1, messageBus.getBindingMetrics("outbound.lazy").getQueueDepth());
+
+        final CountDownLatch received = new CountDownLatch(1);
+        moduleInputChannel.subscribe(new MessageHandler() {
+            @Override
+            public void handleMessage(Message<?> message) throws MessagingException {
+                received.countDown();
+            }
+        });
+        assertTrue("lazy consumer did not start", received.await(5, TimeUnit.SECONDS));
+        assertEquals(0, messageBus.getRetries("inbound.lazy"));
+    }
+}
@@ -0,0 +1,118 @@
+package org.springframework.xd.bus.jms;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Verifies that, with {@code publishOnlyWhenSubscribed}, a pub/sub producer only publishes while
+ * its topic is tapped, whether by a tap bound on the bus or by any consumer on the broker. Whether
+ * a message was published is read from the producer binding's send count.
+ *
+ * @since 1.1
+ */
+public class JmsMessageBusTapTests extends AbstractJmsMessageBusTests {
+
+    @Before
+    public void publishOnlyWhenSubscribed() {
+        messageBus.setPublishOnlyWhenSubscribed(true);
+    }
+
+    @Test
+    public void testPublishesOnlyWhileTapped() throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        messageBus.bindPubSubProducer("tap:stream:lazy", moduleOutputChannel, new Properties());
+        BindingMetrics metrics = messageBus.getBindingMetrics("outbound.tap:stream:lazy");
+        send(moduleOutputChannel, "untapped");
+        assertEquals("published while untapped", 0, metrics.getMessages());
+
+        QueueChannel tapChannel = new QueueChannel();
+        messageBus.bindPubSubConsumer("tap:stream:lazy", tapChannel, new Properties());
+        // a tap bound on this bus takes effect with the very next message
+        send(moduleOutputChannel, "tapped");
+        assertEquals(1, metrics.getMessages());
+        Message<?> received = tapChannel.receive(5000);
+        assertNotNull(received);
+        assertEquals("tapped", received.getPayload());
+
+        messageBus.unbindConsumer("tap:stream:lazy", tapChannel);
+        assertTrue("still published after the tap was unbound", skipsOnceAdvised(moduleOutputChannel, metrics));
+        long published = metrics.getMessages();
+        send(moduleOutputChannel, "untapped again");
+        assertEquals(published, metrics.getMessages());
+        assertNull(tapChannel.receive(500));
+    }
+
+    @Test
+    public void testBrokerSubscriberSwitchesPublishingOn() throws Exception {
+        DirectChannel moduleOutputChannel = new DirectChannel();
+        messageBus.bindPubSubProducer("tap:stream:remote", moduleOutputChannel, new Properties());
+        BindingMetrics metrics = messageBus.getBindingMetrics("outbound.tap:stream:remote");
+        send(moduleOutputChannel, "untapped");
+        assertEquals("published while untapped", 0, metrics.getMessages());
+
+        Connection connection = getConnectionFactory().createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            // a consumer not bound on this bus, only known through the broker's advisory
+            MessageConsumer consumer = session.createConsumer(session.createTopic("xdbus.topictap:stream:remote"));
+            int probes = 0;
+            while (metrics.getMessages() == 0 && probes++ < 100) {
+                send(moduleOutputChannel, "probe");
+                Thread.sleep(50);
+            }
+            // the first message sent after the advisory arrived was published, and every one since
+            assertEquals("not published once the advisory arrived", 1, metrics.getMessages());
+            for (int i = 0; i < 5; i++) {
+                send(moduleOutputChannel, "tapped");
+            }
+            assertEquals(6, metrics.getMessages());
+            for (int i = 0; i < 6; i++) {
+                assertNotNull("a published message was not received", consumer.receive(5000));
+            }
+
+            consumer.close();
+            assertTrue("still published after the consumer closed", skipsOnceAdvised(moduleOutputChannel, metrics));
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Send until a message is skipped, as happens once the broker's advisory of the last
+     * consumer leaving arrives.
+     *
+     * @return whether a message was skipped within five seconds
+     */
+    private static boolean skipsOnceAdvised(DirectChannel moduleOutputChannel, BindingMetrics metrics)
+            throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            long published = metrics.getMessages();
+            send(moduleOutputChannel, "probe");
+            if (metrics.getMessages() == published) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    private static void send(DirectChannel moduleOutputChannel, String payload) {
+        moduleOutputChannel.send(MessageBuilder.withPayload(payload).build());
+    }
+}
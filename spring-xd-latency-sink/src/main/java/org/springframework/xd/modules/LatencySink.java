@@ -0,0 +1,443 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.modules;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.context.SmartLifecycle;
+import org.springframework.integration.handler.AbstractMessageHandler;
+import org.springframework.messaging.Message;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.xd.tuple.Tuple;
+
+/**
+ * Sink that measures the throughput of a stream and the latency of its messages
+ * from the time they were sent, taken from the {@link #setTimestampHeader(String)
+ * timestampHeader} of each message or, failing that, the tuple field of the same name.
+ * Latencies go into an HdrHistogram {@link Recorder}, which handler threads write to
+ * without locking; every {@link #setReportInterval(long) reportInterval} milliseconds
+ * the sink logs the messages received per second and the 50th, 99th and 99.9th
+ * percentile and maximum latency of the interval, and once more over the whole run
+ * when it stops.
+ * <p>
+ * With a {@link #setSequenceHeader(String) sequenceHeader}, the sink also checks that
+ * the messages of each producer, told apart by the {@link #setProducerHeader(String)
+ * producerHeader}, arrive one after the other: a message further ahead than the next
+ * one expected counts the skipped ones as missing, a late message that fills one of
+ * these gaps counts as reordered and no longer as missing, and any other message
+ * behind the next one expected counts as a duplicate. Only the latest
+ * {@value #MAX_GAPS} gaps of a producer are remembered; older ones stay counted as
+ * missing, and a message from before them counts as reordered, as it cannot be told
+ * from a duplicate.
+ * <p>
+ * The defaults match the headers of the template source's load generator, which sends
+ * the time in nanoseconds since the epoch. Both modules derive that time from
+ * {@link System#nanoTime()} anchored to the system clock, so latencies are precise to
+ * a few microseconds within one node, while across hosts they are only as good as the
+ * clocks' synchronization; negative latencies from clock skew are recorded as 0.
+ */
+public class LatencySink extends AbstractMessageHandler implements SmartLifecycle {
+
+	/**
+	 * The largest latency recorded, in nanoseconds; larger ones are recorded as this.
+	 */
+	private static final long HIGHEST_LATENCY = TimeUnit.HOURS.toNanos(1);
+
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	/**
+	 * The number of gaps remembered per producer.
+	 */
+	static final int MAX_GAPS = 10000;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * The header or tuple field holding the time a message was sent.
+	 */
+	private volatile String timestampHeader = "sendTime";
+
+	/**
+	 * The unit of the timestamps, since the epoch.
+	 */
+	private volatile TimeUnit timestampUnit = TimeUnit.NANOSECONDS;
+
+	/**
+	 * The header or tuple field numbering the messages of a producer, or
+	 * {@code null} not to check the sequence.
+	 */
+	private volatile String sequenceHeader = "sequence";
+
+	/**
+	 * The header or tuple field identifying the producer of a message, if
+	 * the messages come from more than one.
+	 */
+	private volatile String producerHeader = "producer";
+
+	/**
+	 * The time between reports in milliseconds.
+	 */
+	private volatile long reportInterval = 5000;
+
+	private final Recorder recorder = new Recorder(TimeUnit.MICROSECONDS.toNanos(1), HIGHEST_LATENCY,
+			SIGNIFICANT_DIGITS);
+
+	private final ConcurrentMap<String, ProducerSequence> sequences = new ConcurrentHashMap<String, ProducerSequence>();
+
+	private final AtomicLong received = new AtomicLong();
+
+	private final AtomicLong missing = new AtomicLong();
+
+	private final AtomicLong reordered = new AtomicLong();
+
+	private final AtomicLong duplicates = new AtomicLong();
+
+	/**
+	 * The difference between {@link System#nanoTime()} and the epoch.
+	 */
+	private final long epochOffset = epochOffset();
+
+	/**
+	 * Latencies of the run so far, guarded by this object's lock.
+	 */
+	private final Histogram totalHistogram = new Histogram(TimeUnit.MICROSECONDS.toNanos(1), HIGHEST_LATENCY,
+			SIGNIFICANT_DIGITS);
+
+	private Histogram intervalHistogram;
+
+	private long lastReportTime;
+
+	private long lastReportReceived;
+
+	private long startTime;
+
+	private volatile ScheduledExecutorService reporter;
+
+	public String getTimestampHeader() {
+		return timestampHeader;
+	}
+
+	public void setTimestampHeader(String timestampHeader) {
+		Assert.hasText(timestampHeader, "timestampHeader must not be empty");
+		this.timestampHeader = timestampHeader;
+	}
+
+	public TimeUnit getTimestampUnit() {
+		return timestampUnit;
+	}
+
+	public void setTimestampUnit(TimeUnit timestampUnit) {
+		Assert.notNull(timestampUnit, "timestampUnit must not be null");
+		this.timestampUnit = timestampUnit;
+	}
+
+	public String getSequenceHeader() {
+		return sequenceHeader;
+	}
+
+	public void setSequenceHeader(String sequenceHeader) {
+		this.sequenceHeader = sequenceHeader == null || sequenceHeader.isEmpty() ? null : sequenceHeader;
+	}
+
+	public String getProducerHeader() {
+		return producerHeader;
+	}
+
+	public void setProducerHeader(String producerHeader) {
+		Assert.hasText(producerHeader, "producerHeader must not be empty");
+		this.producerHeader = producerHeader;
+	}
+
+	public long getReportInterval() {
+		return reportInterval;
+	}
+
+	public void setReportInterval(long reportInterval) {
+		Assert.isTrue(reportInterval > 0, "reportInterval must be greater than 0");
+		this.reportInterval = reportInterval;
+	}
+
+	/**
+	 * @return the number of messages received
+	 */
+	public long getReceived() {
+		return received.get();
+	}
+
+	/**
+	 * @return the number of messages skipped in the sequences of their producers and
+	 *         not received since
+	 */
+	public long getMissing() {
+		return missing.get();
+	}
+
+	/**
+	 * @return the number of messages received after a later one of the same producer
+	 */
+	public long getReordered() {
+		return reordered.get();
+	}
+
+	/**
+	 * @return the number of messages whose sequence had been received before
+	 */
+	public long getDuplicates() {
+		return duplicates.get();
+	}
+
+	@Override
+	protected void handleMessageInternal(Message<?> message) throws Exception {
+		long now = epochOffset + System.nanoTime();
+		received.incrementAndGet();
+		Long timestamp = getLong(message, timestampHeader);
+		if (timestamp != null) {
+			long latency = now - timestampUnit.toNanos(timestamp);
+			recorder.recordValue(Math.min(Math.max(latency, 0), HIGHEST_LATENCY));
+		}
+		String sequenceHeader = this.sequenceHeader;
+		if (sequenceHeader != null) {
+			Long sequence = getLong(message, sequenceHeader);
+			if (sequence != null) {
+				Object producer = getValue(message, producerHeader);
+				checkSequence(producer == null ? "" : producer.toString(), sequence);
+			}
+		}
+	}
+
+	void checkSequence(String producer, long sequence) {
+		ProducerSequence producerSequence = sequences.get(producer);
+		if (producerSequence == null) {
+			ProducerSequence created = new ProducerSequence();
+			producerSequence = sequences.putIfAbsent(producer, created);
+			if (producerSequence == null) {
+				producerSequence = created;
+			}
+		}
+		producerSequence.check(sequence);
+	}
+
+	private static Object getValue(Message<?> message, String name) {
+		Object value = message.getHeaders().get(name);
+		if (value == null && message.getPayload() instanceof Tuple) {
+			Tuple tuple = (Tuple) message.getPayload();
+			if (tuple.hasFieldName(name)) {
+				value = tuple.getValue(name);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @return the header or tuple field as a number, or {@code null} if there is none
+	 */
+	private static Long getLong(Message<?> message, String name) {
+		Object value = getValue(message, name);
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		if (value instanceof String) {
+			try {
+				return Long.valueOf((String) value);
+			}
+			catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Log the throughput and latencies since the last report.
+	 */
+	private synchronized void report() {
+		long now = System.nanoTime();
+		long count = received.get();
+		intervalHistogram = intervalHistogram == null ? recorder.getIntervalHistogram()
+				: recorder.getIntervalHistogram(intervalHistogram);
+		totalHistogram.add(intervalHistogram);
+		log("Last " + TimeUnit.NANOSECONDS.toMillis(now - lastReportTime) + " ms", count - lastReportReceived,
+				now - lastReportTime, intervalHistogram);
+		lastReportTime = now;
+		lastReportReceived = count;
+	}
+
+	private void log(String period, long count, long nanos, Histogram histogram) {
+		logger.info("{}: {} messages, {} per second; latency in microseconds p50 {}, p99 {}, p99.9 {}, max {}; "
+				+ "{} missing, {} reordered, {} duplicates", period, count,
+				Math.round(count * 1e9 / Math.max(nanos, 1)), micros(histogram, 50.0), micros(histogram, 99.0),
+				micros(histogram, 99.9),
+				histogram.getTotalCount() == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(histogram.getMaxValue()),
+				missing.get(), reordered.get(), duplicates.get());
+	}
+
+	private static long micros(Histogram histogram, double percentile) {
+		return TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(percentile));
+	}
+
+	/**
+	 * Start reporting; this has no effect if the sink is already running.
+	 */
+	@Override
+	public synchronized void start() {
+		if (reporter == null) {
+			startTime = lastReportTime = System.nanoTime();
+			lastReportReceived = received.get();
+			reporter = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("latency-sink"));
+			reporter.scheduleAtFixedRate(new Runnable() {
+
+				@Override
+				public void run() {
+					report();
+				}
+			}, reportInterval, reportInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stop reporting, after a last report of the interval so far and one over the
+	 * whole run.
+	 */
+	@Override
+	public synchronized void stop() {
+		if (reporter != null) {
+			reporter.shutdownNow();
+			reporter = null;
+			report();
+			long nanos = System.nanoTime() - startTime;
+			log("Total over " + TimeUnit.NANOSECONDS.toSeconds(nanos) + " s", received.get(), nanos, totalHistogram);
+		}
+	}
+
+	@Override
+	public void stop(Runnable callback) {
+		stop();
+		callback.run();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return reporter != null;
+	}
+
+	@Override
+	public boolean isAutoStartup() {
+		return true;
+	}
+
+	@Override
+	public int getPhase() {
+		return 0;
+	}
+
+	/**
+	 * The sequence of one producer: the next sequence expected and the gaps before it,
+	 * as ranges of missing sequences keyed by their first, guarded by this object's lock.
+	 */
+	private class ProducerSequence {
+
+		private boolean started;
+
+		private long next;
+
+		/**
+		 * The first sequence of each gap, mapped to the sequence after its last.
+		 */
+		private final TreeMap<Long, Long> gaps = new TreeMap<Long, Long>();
+
+		/**
+		 * Sequences below this may be in a gap that was forgotten.
+		 */
+		private long forgottenBelow = Long.MIN_VALUE;
+
+		synchronized void check(long sequence) {
+			if (!started || sequence >= next) {
+				if (started && sequence > next) {
+					missing.addAndGet(sequence - next);
+					addGap(next, sequence);
+				}
+				started = true;
+				next = sequence + 1;
+				return;
+			}
+			Map.Entry<Long, Long> gap = gaps.floorEntry(sequence);
+			if (gap != null && sequence < gap.getValue()) {
+				fill(gap.getKey(), gap.getValue(), sequence);
+				missing.decrementAndGet();
+				reordered.incrementAndGet();
+			}
+			else if (sequence < forgottenBelow) {
+				reordered.incrementAndGet();
+			}
+			else {
+				duplicates.incrementAndGet();
+			}
+		}
+
+		/**
+		 * Remove a received sequence from its gap, splitting the gap in two if the
+		 * sequence is inside it.
+		 */
+		private void fill(long first, long end, long sequence) {
+			gaps.remove(first);
+			if (sequence > first) {
+				addGap(first, sequence);
+			}
+			if (sequence + 1 < end) {
+				addGap(sequence + 1, end);
+			}
+		}
+
+		/**
+		 * Remember a gap, forgetting the oldest one if there are too many.
+		 */
+		private void addGap(long first, long end) {
+			gaps.put(first, end);
+			if (gaps.size() > MAX_GAPS) {
+				forgottenBelow = Math.max(forgottenBelow, gaps.pollFirstEntry().getValue());
+			}
+		}
+
+	}
+
+	/**
+	 * Anchor {@link System#nanoTime()} to the epoch at a tick of the system clock, so
+	 * the offset is accurate to microseconds rather than to the clock's milliseconds.
+	 */
+	private static long epochOffset() {
+		long millis = System.currentTimeMillis();
+		long tick;
+		while ((tick = System.currentTimeMillis()) == millis) {
+			// spin until the clock ticks, at most a few milliseconds
+		}
+		return TimeUnit.MILLISECONDS.toNanos(tick) - System.nanoTime();
+	}
+
+}
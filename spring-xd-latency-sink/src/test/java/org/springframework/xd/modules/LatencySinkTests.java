@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.modules;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import org.springframework.integration.support.MessageBuilder;
+
+/**
+ * Tests for the sequence checks of {@link LatencySink}: gaps, late messages filling
+ * them, and duplicates.
+ */
+public class LatencySinkTests {
+
+	private final LatencySink sink = new LatencySink();
+
+	@Test
+	public void testInOrder() {
+		check("a", 0, 1, 2, 3);
+		assertCounts(0, 0, 0);
+	}
+
+	@Test
+	public void testFirstSequenceNeedNotBeZero() {
+		check("a", 5, 6, 7);
+		assertCounts(0, 0, 0);
+	}
+
+	@Test
+	public void testGapCountsMissing() {
+		check("a", 0, 1, 5, 6);
+		assertCounts(3, 0, 0);
+	}
+
+	@Test
+	public void testLateMessagesFillGap() {
+		check("a", 0, 4, 2, 1, 3);
+		assertCounts(0, 3, 0);
+	}
+
+	@Test
+	public void testLateMessageInsideGapSplitsIt() {
+		check("a", 0, 10, 5);
+		assertCounts(8, 1, 0);
+		check("a", 1, 9);
+		assertCounts(6, 3, 0);
+		// filled already
+		check("a", 5, 1, 9);
+		assertCounts(6, 3, 3);
+	}
+
+	@Test
+	public void testRepeatedMessagesCountAsDuplicates() {
+		check("a", 0, 1, 1, 2, 0);
+		assertCounts(0, 0, 2);
+	}
+
+	@Test
+	public void testDuplicateOfLateMessageDoesNotDecrementMissing() {
+		check("a", 0, 3, 1, 1, 1);
+		assertCounts(1, 1, 2);
+	}
+
+	@Test
+	public void testProducersAreCheckedApart() {
+		check("a", 0, 1, 2);
+		check("b", 0, 2);
+		check("a", 3);
+		check("b", 1, 2);
+		assertCounts(0, 1, 1);
+	}
+
+	@Test
+	public void testOldestGapsAreForgotten() {
+		long sequence = 0;
+		check("a", sequence);
+		for (int i = 0; i <= LatencySink.MAX_GAPS; i++) {
+			sequence += 2;
+			check("a", sequence);
+		}
+		assertCounts(LatencySink.MAX_GAPS + 1, 0, 0);
+		// the first gap, at 1, was forgotten: the message stays missing but is not a duplicate
+		check("a", 1);
+		assertCounts(LatencySink.MAX_GAPS + 1, 1, 0);
+		// the second gap, at 3, is remembered
+		check("a", 3);
+		assertCounts(LatencySink.MAX_GAPS, 2, 0);
+	}
+
+	@Test
+	public void testSequenceFromHeaders() throws Exception {
+		send("p", 0);
+		send("p", 2);
+		send("p", 2);
+		send("p", 1);
+		assertEquals(4, sink.getReceived());
+		assertCounts(0, 1, 1);
+	}
+
+	@Test
+	public void testNoSequenceHeaderDisablesCheck() throws Exception {
+		sink.setSequenceHeader(null);
+		send("p", 0);
+		send("p", 0);
+		assertEquals(2, sink.getReceived());
+		assertCounts(0, 0, 0);
+	}
+
+	private void check(String producer, long... sequences) {
+		for (long sequence : sequences) {
+			sink.checkSequence(producer, sequence);
+		}
+	}
+
+	private void send(String producer, long sequence) {
+		sink.handleMessage(MessageBuilder.withPayload("message")
+				.setHeader(sink.getProducerHeader(), producer)
+				.setHeader("sequence", sequence)
+				.build());
+	}
+
+	private void assertCounts(long missing, long reordered, long duplicates) {
+		assertEquals("missing", missing, sink.getMissing());
+		assertEquals("reordered", reordered, sink.getReordered());
+		assertEquals("duplicates", duplicates, sink.getDuplicates());
+	}
+
+}
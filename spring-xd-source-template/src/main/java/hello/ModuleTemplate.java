@@ -16,79 +16,452 @@
 
 package hello;
 
+import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import org.springframework.format.datetime.DateFormatter;
 import org.springframework.integration.endpoint.MessageProducerSupport;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
-import org.springframework.xd.tuple.Tuple;
+import org.springframework.util.Assert;
 import org.springframework.xd.tuple.TupleBuilder;
 
 /**
+ * Source that generates load: {@link #setThreads(int) threads} producer
+ * threads together send {@link #setRate(double) rate} messages per second,
+ * or as many as they can with a rate of 0. Each thread paces itself
+ * against an absolute schedule, so the rate does not drift with the time
+ * spent sending; a thread that falls behind sends without pausing until
+ * it has caught up, but never makes up for more than a second.
+ * <p>
+ * With a {@link #setBurstRate(double) burst rate}, the rate switches to
+ * it for {@link #setBurstDuration(long) burstDuration} milliseconds at
+ * the start of every {@link #setBurstPeriod(long) burstPeriod}. A thread
+ * waiting between messages wakes when a burst starts or ends, so that
+ * bursts start on time even at a low base rate.
+ * <p>
+ * The payload is a tuple with the fields {@code sequence}, {@code date}
+ * and {@code random}, plus a {@code payload} string of
+ * {@link #setPayloadSize(int) payloadSize} characters if that is greater
+ * than 0; or, depending on the {@link #setPayloadType(PayloadType) payload
+ * type}, just such a string or a {@code byte[]} of that size. A thread
+ * generates its string and bytes once and sends the same instance every
+ * time. Every message has the headers {@value #PRODUCER_HEADER},
+ * {@value #SEQUENCE_HEADER} (numbering the messages of each producer
+ * thread from 0) and {@value #SEND_TIME_HEADER}, for sinks measuring
+ * latency and loss.
+ * <p>
+ * Nothing is shared between the threads while sending: each has its own
+ * {@link Random}, date format and sequence.
+ *
  * @author Patrick Peralta
  */
 public class ModuleTemplate extends MessageProducerSupport {  // todo: rename this class to match your module name
 
+	/**
+	 * Header identifying the producer thread of a message.
+	 */
+	public static final String PRODUCER_HEADER = "producer";
+
+	/**
+	 * Header with the position of a message among those of its producer.
+	 */
+	public static final String SEQUENCE_HEADER = "sequence";
+
+	/**
+	 * Header with the time a message was sent, in nanoseconds since the epoch;
+	 * precise to the nanosecond between messages of the same JVM, but only as
+	 * accurate as the system clock when compared to another host's time.
+	 */
+	public static final String SEND_TIME_HEADER = "sendTime";
+
+	/**
+	 * The longest a producer thread catches up after falling behind.
+	 */
+	private static final long MAX_LAG_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private static final String CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+	/**
+	 * The shape of the generated payloads.
+	 */
+	public enum PayloadType {
+
+		/**
+		 * A tuple with the fields {@code sequence}, {@code date}, {@code random}
+		 * and, with a payload size, {@code payload}.
+		 */
+		TUPLE,
+
+		/**
+		 * A string of random characters.
+		 */
+		STRING,
+
+		/**
+		 * An array of random bytes.
+		 */
+		BYTES
+	}
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
 	private final AtomicBoolean running = new AtomicBoolean(false);
 
-	private final AtomicLong sequence = new AtomicLong();
+	/**
+	 * The messages per second sent by all threads together, or 0 to send as
+	 * fast as possible. The default is 1.
+	 */
+	private volatile double rate = 1;
+
+	/**
+	 * The number of producer threads. The default is 1.
+	 */
+	private volatile int threads = 1;
+
+	/**
+	 * The size of the generated string or byte array. The default is 0.
+	 */
+	private volatile int payloadSize;
+
+	/**
+	 * The shape of the payloads. The default is {@link PayloadType#TUPLE}.
+	 */
+	private volatile PayloadType payloadType = PayloadType.TUPLE;
+
+	/**
+	 * The messages per second sent during bursts, or 0 (the default) for no bursts.
+	 */
+	private volatile double burstRate;
+
+	/**
+	 * The length of each burst in milliseconds.
+	 */
+	private volatile long burstDuration = 1000;
+
+	/**
+	 * The time in milliseconds from the start of one burst to the next.
+	 */
+	private volatile long burstPeriod = 10000;
+
+	private volatile Generator[] generators = new Generator[0];
+
+	private volatile long startTime;
+
+	/**
+	 * The difference between {@link System#nanoTime()} and the epoch.
+	 */
+	private volatile long epochOffset;
+
+	private ExecutorService executorService;
 
-	private final Random random = new Random();
+	public double getRate() {
+		return rate;
+	}
+
+	public void setRate(double rate) {
+		Assert.isTrue(rate >= 0, "rate must not be negative");
+		this.rate = rate;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		Assert.isTrue(threads > 0, "threads must be greater than 0");
+		this.threads = threads;
+	}
+
+	public int getPayloadSize() {
+		return payloadSize;
+	}
 
-	private final ExecutorService executorService = Executors.newSingleThreadExecutor(new CustomizableThreadFactory(
-			"source-template"));  // todo: rename this thread to match your module name
+	public void setPayloadSize(int payloadSize) {
+		Assert.isTrue(payloadSize >= 0, "payloadSize must not be negative");
+		this.payloadSize = payloadSize;
+	}
+
+	public PayloadType getPayloadType() {
+		return payloadType;
+	}
+
+	public void setPayloadType(PayloadType payloadType) {
+		Assert.notNull(payloadType, "payloadType must not be null");
+		this.payloadType = payloadType;
+	}
+
+	public double getBurstRate() {
+		return burstRate;
+	}
+
+	public void setBurstRate(double burstRate) {
+		Assert.isTrue(burstRate >= 0, "burstRate must not be negative");
+		this.burstRate = burstRate;
+	}
+
+	public long getBurstDuration() {
+		return burstDuration;
+	}
+
+	public void setBurstDuration(long burstDuration) {
+		Assert.isTrue(burstDuration >= 0, "burstDuration must not be negative");
+		this.burstDuration = burstDuration;
+	}
+
+	public long getBurstPeriod() {
+		return burstPeriod;
+	}
+
+	public void setBurstPeriod(long burstPeriod) {
+		Assert.isTrue(burstPeriod > 0, "burstPeriod must be greater than 0");
+		this.burstPeriod = burstPeriod;
+	}
+
+	/**
+	 * @return the number of messages sent since the module started
+	 */
+	public long getSentCount() {
+		long sent = 0;
+		for (Generator generator : generators) {
+			sent += generator.sent.get();
+		}
+		return sent;
+	}
 
 	@Override
 	protected void doStart() {
 		if (running.compareAndSet(false, true)) {
-			executorService.submit(new SampleExecutor());
+			int threads = getThreads();
+			executorService = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory(
+					"source-template-"));  // todo: rename this thread to match your module name
+			String producerId = UUID.randomUUID().toString();
+			epochOffset = epochOffset();
+			long start = System.nanoTime();
+			Generator[] generators = new Generator[threads];
+			for (int i = 0; i < threads; i++) {
+				generators[i] = new Generator(producerId + "-" + i, i, threads, start);
+			}
+			this.generators = generators;
+			this.startTime = start;
+			for (Generator generator : generators) {
+				executorService.submit(generator);
+			}
+			logger.info("Started {} threads sending {} messages per second", threads,
+					getRate() > 0 ? getRate() : "as many");
 		}
 	}
 
 	@Override
 	protected void doStop() {
 		if (running.compareAndSet(true, false)) {
-			executorService.shutdown();
+			executorService.shutdownNow();
+			try {
+				executorService.awaitTermination(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			long sent = getSentCount();
+			double seconds = Math.max(System.nanoTime() - startTime, 1) / 1e9;
+			logger.info("Stopped after sending {} messages, {} per second", sent, Math.round(sent / seconds));
 		}
 	}
 
-	class SampleExecutor implements Runnable {
+	/**
+	 * Anchor {@link System#nanoTime()} to the epoch at a tick of the system clock, so
+	 * the offset is accurate to microseconds rather than to the clock's milliseconds.
+	 */
+	private static long epochOffset() {
+		long millis = System.currentTimeMillis();
+		long tick;
+		while ((tick = System.currentTimeMillis()) == millis) {
+			// spin until the clock ticks, at most a few milliseconds
+		}
+		return TimeUnit.MILLISECONDS.toNanos(tick) - System.nanoTime();
+	}
+
+	/**
+	 * Sends the messages of one producer thread.
+	 */
+	class Generator implements Runnable {
+
+		private final String producer;
+
+		private final int threads;
+
+		private final long start;
+
+		/**
+		 * When this thread sends its first message; threads are staggered so
+		 * they do not all send at the same moment.
+		 */
+		private final long firstSend;
+
+		private final AtomicLong sent = new AtomicLong();
+
+		private final Random random = new Random();
+
+		private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+
+		private final Date date = new Date();
+
+		private long formattedSecond = -1;
+
+		private String formattedDate;
+
+		private final String text;
+
+		private final byte[] bytes;
+
+		/**
+		 * Fraction of a nanosecond carried over between scheduled send times.
+		 */
+		private double remainder;
+
+		/**
+		 * The interval the current send time was scheduled with.
+		 */
+		private double pacedInterval;
+
+		Generator(String producer, int index, int threads, long start) {
+			this.producer = producer;
+			this.threads = threads;
+			this.start = start;
+			double rate = getRate();
+			this.firstSend = rate > 0 ? start + (long) (1e9 * index / rate) : start;
+			int size = getPayloadSize();
+			StringBuilder text = new StringBuilder(size);
+			for (int i = 0; i < size; i++) {
+				text.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+			}
+			this.text = text.toString();
+			this.bytes = new byte[getPayloadType() == PayloadType.BYTES ? size : 0];
+			random.nextBytes(bytes);
+		}
 
 		@Override
 		public void run() {
 			// todo: your module code goes here; don't forget to invoke
 			// sendMessage to send data to the output channel
-			DateFormatter dateFormatter = new DateFormatter("yyyy-MM-dd HH:mm:ss");
-
-			while (running.get()) {
-				Tuple tuple = TupleBuilder.tuple()
-					.put("sequence", sequence.getAndIncrement())
-					.put("date", dateFormatter.print(new Date(), Locale.US))
-					.put("random", random.nextLong())
-					.build();
+			long sequence = 0;
+			long next = firstSend;
+			try {
+				while (running.get()) {
+					long now = System.nanoTime();
+					double interval = interval(now);
+					if (interval > 0) {
+						if (interval != pacedInterval) {
+							if (next - now > interval) {
+								// the rate went up: do not wait out a gap of the old rate
+								next = now;
+								remainder = 0;
+							}
+							pacedInterval = interval;
+						}
+						long wait = next - now;
+						if (wait > 0) {
+							LockSupport.parkNanos(Math.min(wait, untilRateChange(now)));
+							continue;
+						}
+						if (-wait > MAX_LAG_NANOS) {
+							next = now - MAX_LAG_NANOS;
+						}
+						double step = interval + remainder;
+						next += (long) step;
+						remainder = step - (long) step;
+					}
+					sendMessage(createMessage(sequence++));
+					sent.lazySet(sequence);
+				}
+			}
+			catch (RuntimeException e) {
+				// a send interrupted by doStop is not an error
+				if (running.getAndSet(false)) {
+					logger.error("Unhandled exception", e);
+				}
+			}
+		}
 
-				sendMessage(MessageBuilder.withPayload(tuple).build());
+		/**
+		 * @return the nanoseconds from the given time until a burst starts or ends
+		 */
+		private long untilRateChange(long now) {
+			if (getBurstRate() <= 0) {
+				return Long.MAX_VALUE;
+			}
+			long period = TimeUnit.MILLISECONDS.toNanos(getBurstPeriod());
+			long duration = TimeUnit.MILLISECONDS.toNanos(getBurstDuration());
+			long phase = Math.max(now - start, 0) % period;
+			return phase < duration ? duration - phase : period - phase;
+		}
 
-				try {
-					Thread.sleep(1000);
+		/**
+		 * @return the nanoseconds between the messages of this thread at the given
+		 *         time, or 0 for no pacing
+		 */
+		private double interval(long now) {
+			double rate = getRate();
+			double burstRate = getBurstRate();
+			if (burstRate > 0) {
+				long elapsed = TimeUnit.NANOSECONDS.toMillis(now - start);
+				if (elapsed >= 0 && elapsed % getBurstPeriod() < getBurstDuration()) {
+					rate = burstRate;
 				}
-				catch (InterruptedException e) {
-					// no need to reset the thread's interrupt status via
-					// Thread.currentThread().interrupt() because this
-					// thread will complete execution by clearing the
-					// "running" flag
+			}
+			return rate > 0 ? 1e9 * threads / rate : 0;
+		}
 
-					running.set(false);
-				}
+		private Message<?> createMessage(long sequence) {
+			Object payload;
+			switch (getPayloadType()) {
+				case STRING:
+					payload = text;
+					break;
+				case BYTES:
+					payload = bytes;
+					break;
+				default:
+					TupleBuilder tupleBuilder = TupleBuilder.tuple()
+							.put("sequence", sequence)
+							.put("date", currentDate())
+							.put("random", random.nextLong());
+					if (!text.isEmpty()) {
+						tupleBuilder.put("payload", text);
+					}
+					payload = tupleBuilder.build();
 			}
+			return MessageBuilder.withPayload(payload)
+					.setHeader(PRODUCER_HEADER, producer)
+					.setHeader(SEQUENCE_HEADER, sequence)
+					.setHeader(SEND_TIME_HEADER, epochOffset + System.nanoTime())
+					.build();
+		}
 
+		/**
+		 * @return the current time, formatted again only when the second changes
+		 */
+		private String currentDate() {
+			long now = System.currentTimeMillis();
+			long second = now / 1000;
+			if (second != formattedSecond) {
+				date.setTime(second * 1000);
+				formattedDate = dateFormat.format(date);
+				formattedSecond = second;
+			}
+			return formattedDate;
 		}
 	}
 
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.modules;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+
+/**
+ * A file under {@code /proc} that is kept open and read again, from the start, into the same
+ * buffer for every sample. The content is parsed in place: {@link #find(byte[])} locates a line
+ * by its leading key and {@link #parseLong(int)} reads the numbers that follow, so a sample
+ * allocates nothing once the buffer has grown to the size of the file.
+ */
+public class ProcFile implements Closeable {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private final String path;
+
+	private final RandomAccessFile file;
+
+	private byte[] buffer = new byte[4096];
+
+	private int length;
+
+	/**
+	 * Position just after the last number parsed by {@link #parseLong(int)}.
+	 */
+	private int position;
+
+	public ProcFile(String path) throws IOException {
+		this.path = path;
+		this.file = new RandomAccessFile(path, "r");
+	}
+
+	/**
+	 * Encode a key to look up with {@link #find(byte[])}.
+	 */
+	public static byte[] key(String key) {
+		return key.getBytes(ASCII);
+	}
+
+	/**
+	 * Read the current content of the file, growing the buffer if it does not fit.
+	 */
+	public void read() throws IOException {
+		file.seek(0);
+		length = 0;
+		int count;
+		while ((count = file.read(buffer, length, buffer.length - length)) > 0) {
+			length += count;
+			if (length == buffer.length) {
+				byte[] grown = new byte[buffer.length * 2];
+				System.arraycopy(buffer, 0, grown, 0, length);
+				buffer = grown;
+			}
+		}
+	}
+
+	/**
+	 * Find the line starting with the given key.
+	 *
+	 * @return the position just after the key, or -1 if no line starts with it
+	 */
+	public int find(byte[] key) {
+		int lineStart = 0;
+		while (lineStart < length) {
+			if (startsWith(lineStart, key)) {
+				return lineStart + key.length;
+			}
+			while (lineStart < length && buffer[lineStart] != '\n') {
+				lineStart++;
+			}
+			lineStart++;
+		}
+		return -1;
+	}
+
+	private boolean startsWith(int offset, byte[] key) {
+		if (offset + key.length > length) {
+			return false;
+		}
+		for (int i = 0; i < key.length; i++) {
+			if (buffer[offset + i] != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parse the first number at or after the given position on the same line, skipping
+	 * spaces, tabs and colons; {@link #getPosition()} then returns the position after it.
+	 *
+	 * @throws IllegalStateException if the line has no further number
+	 */
+	public long parseLong(int from) {
+		int i = from;
+		while (i < length && (buffer[i] == ' ' || buffer[i] == '\t' || buffer[i] == ':')) {
+			i++;
+		}
+		if (i >= length || buffer[i] < '0' || buffer[i] > '9') {
+			throw new IllegalStateException("Expected a number at offset " + from + " of " + path);
+		}
+		long value = 0;
+		while (i < length && buffer[i] >= '0' && buffer[i] <= '9') {
+			value = value * 10 + (buffer[i] - '0');
+			i++;
+		}
+		position = i;
+		return value;
+	}
+
+	/**
+	 * Find the line starting with the given key and parse the first number after it.
+	 *
+	 * @throws IllegalStateException if there is no such line
+	 */
+	public long valueOf(byte[] key) {
+		int offset = find(key);
+		if (offset < 0) {
+			throw new IllegalStateException("No " + new String(key, ASCII).trim() + " in " + path);
+		}
+		return parseLong(offset);
+	}
+
+	/**
+	 * @return the position just after the number last parsed
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.modules;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.util.Assert;
+
+/**
+ * A bounded, lock-free buffer of samples (fixed-width {@code long} arrays with a capture
+ * time) between one thread that offers them and one thread that polls them. Samples are
+ * copied into preallocated slots, so neither side allocates.
+ * <p>
+ * When the buffer is full, the {@link OverflowPolicy} decides what becomes of a new sample:
+ * <ul>
+ *  <li>{@link OverflowPolicy#DROP_OLDEST DROP_OLDEST} discards the oldest buffered sample to
+ *  make room for it</li>
+ *  <li>{@link OverflowPolicy#COALESCE COALESCE} keeps the buffered samples and puts the new one
+ *  in a single overflow slot, replacing any sample still waiting there, which is polled once the
+ *  buffer is empty; samples are polled in order</li>
+ *  <li>{@link OverflowPolicy#BLOCK BLOCK} waits for the poller to make room</li>
+ * </ul>
+ * Discarded and replaced samples are counted.
+ * <p>
+ * The poller takes a sample by copying its slot and then advancing the read sequence with a
+ * compare-and-set; the offering thread advances the same sequence to drop the oldest sample,
+ * and only writes a slot once the read sequence has moved past it. A poller whose
+ * compare-and-set fails may have copied a slot being rewritten, so it discards the copy and
+ * tries again. The overflow slot is guarded by a version that is odd while it is written.
+ */
+public class SampleRingBuffer {
+
+	/**
+	 * Returned by {@link #poll(long[])} when there is no sample.
+	 */
+	public static final long NONE = Long.MIN_VALUE;
+
+	private static final long BLOCK_PARK_NANOS = 100000;
+
+	/**
+	 * What to do with a sample offered to a full buffer.
+	 */
+	public enum OverflowPolicy {
+
+		/**
+		 * Discard the oldest buffered sample.
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * Replace the newest sample that did not fit, if it was not polled yet.
+		 */
+		COALESCE,
+
+		/**
+		 * Wait until there is room.
+		 */
+		BLOCK
+	}
+
+	private final int capacity;
+
+	private final int mask;
+
+	private final int width;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final long[] slots;
+
+	private final long[] timestamps;
+
+	/**
+	 * The sequence of the next sample to write; only the offering thread updates it.
+	 */
+	private final AtomicLong writeSequence = new AtomicLong();
+
+	/**
+	 * The sequence of the next sample to poll.
+	 */
+	private final AtomicLong readSequence = new AtomicLong();
+
+	/**
+	 * The overflow slot of {@link OverflowPolicy#COALESCE}, with the capture time last.
+	 */
+	private final AtomicLongArray overflow;
+
+	private final AtomicLong overflowVersion = new AtomicLong();
+
+	/**
+	 * The overflow version last polled; the overflow slot holds a sample waiting to be polled
+	 * while the two differ.
+	 */
+	private final AtomicLong polledOverflowVersion = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * @param capacity the number of samples buffered, rounded up to a power of two
+	 * @param width the number of values per sample
+	 * @param overflowPolicy what to do with a sample offered to a full buffer
+	 */
+	public SampleRingBuffer(int capacity, int width, OverflowPolicy overflowPolicy) {
+		Assert.isTrue(capacity > 0 && capacity <= 1 << 30, "capacity must be between 1 and 2^30");
+		Assert.isTrue(width > 0, "width must be greater than 0");
+		Assert.notNull(overflowPolicy, "overflowPolicy must not be null");
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		this.capacity = size;
+		this.mask = this.capacity - 1;
+		this.width = width;
+		this.overflowPolicy = overflowPolicy;
+		this.slots = new long[this.capacity * width];
+		this.timestamps = new long[this.capacity];
+		this.overflow = new AtomicLongArray(width + 1);
+	}
+
+	/**
+	 * Add a sample; called by a single thread. Unless the policy is
+	 * {@link OverflowPolicy#BLOCK BLOCK}, this never waits.
+	 *
+	 * @param sample the values, of which the first {@code width} are copied
+	 * @param timestamp the capture time of the sample
+	 * @return {@code false} if the thread was interrupted while waiting for room
+	 */
+	public boolean offer(long[] sample, long timestamp) {
+		long sequence = writeSequence.get();
+		if (overflowPolicy == OverflowPolicy.COALESCE
+				&& (isOverflowPending() || sequence - readSequence.get() >= capacity)) {
+			// keep order: while a sample waits in the overflow slot, newer ones go there too
+			writeOverflow(sample, timestamp);
+			return true;
+		}
+		while (sequence - readSequence.get() >= capacity) {
+			if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+				long oldest = readSequence.get();
+				if (sequence - oldest >= capacity && readSequence.compareAndSet(oldest, oldest + 1)) {
+					dropped.incrementAndGet();
+				}
+			}
+			else {
+				if (Thread.currentThread().isInterrupted()) {
+					return false;
+				}
+				LockSupport.parkNanos(BLOCK_PARK_NANOS);
+			}
+		}
+		int slot = (int) (sequence & mask);
+		System.arraycopy(sample, 0, slots, slot * width, width);
+		timestamps[slot] = timestamp;
+		writeSequence.lazySet(sequence + 1);
+		return true;
+	}
+
+	private boolean isOverflowPending() {
+		return overflowVersion.get() != polledOverflowVersion.get();
+	}
+
+	private void writeOverflow(long[] sample, long timestamp) {
+		long version = overflowVersion.get();
+		overflowVersion.set(version + 1);
+		if (polledOverflowVersion.get() != version) {
+			coalesced.incrementAndGet();
+		}
+		for (int i = 0; i < width; i++) {
+			overflow.set(i, sample[i]);
+		}
+		overflow.set(width, timestamp);
+		overflowVersion.set(version + 2);
+	}
+
+	/**
+	 * Take the oldest sample; called by a single thread.
+	 *
+	 * @param sample the array to copy the values into
+	 * @return the capture time of the sample, or {@link #NONE} if there is none
+	 */
+	public long poll(long[] sample) {
+		long sequence;
+		while ((sequence = readSequence.get()) != writeSequence.get()) {
+			int slot = (int) (sequence & mask);
+			System.arraycopy(slots, slot * width, sample, 0, width);
+			long timestamp = timestamps[slot];
+			if (readSequence.compareAndSet(sequence, sequence + 1)) {
+				return timestamp;
+			}
+		}
+		return overflowPolicy == OverflowPolicy.COALESCE ? pollOverflow(sample) : NONE;
+	}
+
+	private long pollOverflow(long[] sample) {
+		long version = overflowVersion.get();
+		if ((version & 1) != 0 || version == polledOverflowVersion.get()) {
+			// nothing waiting, or being written; a later poll gets it
+			return NONE;
+		}
+		for (int i = 0; i < width; i++) {
+			sample[i] = overflow.get(i);
+		}
+		long timestamp = overflow.get(width);
+		if (overflowVersion.get() != version) {
+			return NONE;
+		}
+		polledOverflowVersion.set(version);
+		return timestamp;
+	}
+
+	/**
+	 * @return whether no sample is waiting to be polled
+	 */
+	public boolean isEmpty() {
+		return readSequence.get() == writeSequence.get() && !isOverflowPending();
+	}
+
+	/**
+	 * @return the number of samples buffered, rounded up to a power of two
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the number of samples discarded to make room under
+	 * {@link OverflowPolicy#DROP_OLDEST DROP_OLDEST}
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return the number of samples replaced by a newer one before they were polled under
+	 * {@link OverflowPolicy#COALESCE COALESCE}
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+}
@@ -16,17 +16,14 @@
 
 package org.springframework.xd.modules;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.StringTokenizer;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,12 +31,18 @@ import org.slf4j.LoggerFactory;
 import org.springframework.integration.endpoint.MessageProducerSupport;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.xd.tuple.Tuple;
 import org.springframework.xd.tuple.TupleBuilder;
 
 /**
  * Implementation of Spring Integration {@link MessageProducerSupport}
- * that publishes <a href="http://en.wikipedia.org/wiki/Vmstat"><code>vmstat</code></a>
- * output as Spring XD {@link org.springframework.xd.tuple.Tuple tuples}.
+ * that publishes the figures reported by
+ * <a href="http://en.wikipedia.org/wiki/Vmstat"><code>vmstat</code></a>
+ * as Spring XD {@link org.springframework.xd.tuple.Tuple tuples}, one
+ * every {@link #setInterval(long) interval}. Rather than running
+ * {@code vmstat}, the module reads {@code /proc} itself (see
+ * {@link VMStatSampler}), so intervals may be shorter than a second.
  * The following fields are included:
  * <ul>
  *  <li>waitingProcessCount</li>
@@ -49,6 +52,7 @@ import org.springframework.xd.tuple.TupleBuilder;
  *  <li>bufferMemory</li>
  *  <li>cacheMemory</li>
  *  <li>swapIn</li>
+ *  <li>swapOut</li>
  *  <li>bytesIn</li>
  *  <li>bytesOut</li>
  *  <li>interruptsPerSecond</li>
@@ -57,6 +61,24 @@ import org.springframework.xd.tuple.TupleBuilder;
  *  <li>kernelCpu</li>
  *  <li>idleCpu</li>
  *  </ul>
+ *  <p>
+ *  With a {@link #setWindow(long) window} set, the module aggregates the
+ *  samples instead and publishes one summary per window with the
+ *  minimum, maximum, mean and percentiles of each field (see
+ *  {@link VMStatWindow}); with {@link #setPassthrough(boolean) passthrough}
+ *  it publishes the samples as well.
+ *  </p>
+ *  <p>
+ *  Sampling and publishing run on separate threads, handing samples
+ *  over through a {@link SampleRingBuffer} of
+ *  {@link #setBufferSize(int) bufferSize} samples, so a slow
+ *  downstream does not delay sampling. When the buffer is full the
+ *  {@link #setOverflowPolicy(SampleRingBuffer.OverflowPolicy) overflow policy}
+ *  drops the oldest sample, coalesces the newest ones or makes the
+ *  sampler wait. Each sample message has a {@value #SAMPLE_TIME_HEADER}
+ *  header with the time the sample was taken, and windows are
+ *  delimited by those times rather than by when samples are published.
+ *  </p>
  *  To deploy a simple stream:
  *  <p>
  *    <code>
@@ -75,9 +97,21 @@ import org.springframework.xd.tuple.TupleBuilder;
 public class VMStat extends MessageProducerSupport {
 
 	/**
-	 * The default {@code vmstat} command.
+	 * The default sampling interval in milliseconds.
+	 */
+	public static final long DEFAULT_INTERVAL = 1000;
+
+	/**
+	 * The default number of samples buffered between the sampling
+	 * and publishing threads.
 	 */
-	public static final String DEFAULT_VM_STAT_COMMAND = "vmstat -n 1";
+	public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+	/**
+	 * Header holding the time, in milliseconds since the epoch, at
+	 * which a published sample was taken.
+	 */
+	public static final String SAMPLE_TIME_HEADER = "sampleTime";
 
 	/**
 	 * Logger.
@@ -85,50 +119,160 @@ public class VMStat extends MessageProducerSupport {
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	/**
-	 * The {@code vmstat} command. This command <em>must</em> include
-	 * the {@code delay} parameter so that the program continues to
-	 * produce output (as opposed to exiting immediately). The
-	 * default value is "{@value #DEFAULT_VM_STAT_COMMAND}".
+	 * The time in milliseconds between samples. The default value
+	 * is {@value #DEFAULT_INTERVAL}.
+	 */
+	private volatile long interval = DEFAULT_INTERVAL;
+
+	/**
+	 * The length in milliseconds of the windows over which samples
+	 * are summarized, or 0 (the default) to publish every sample.
 	 */
-	private volatile String vmStatCommand = DEFAULT_VM_STAT_COMMAND;
+	private volatile long window;
+
+	/**
+	 * Whether every sample is published alongside the window summaries.
+	 */
+	private volatile boolean passthrough;
+
+	/**
+	 * The number of samples buffered between the sampling and
+	 * publishing threads. The default value is
+	 * {@value #DEFAULT_BUFFER_SIZE}.
+	 */
+	private volatile int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	/**
+	 * What to do with a sample when the buffer is full. The default
+	 * is to drop the oldest buffered sample.
+	 */
+	private volatile SampleRingBuffer.OverflowPolicy overflowPolicy = SampleRingBuffer.OverflowPolicy.DROP_OLDEST;
+
+	/**
+	 * Buffer of the samples taken but not yet published; created on
+	 * {@link #doStart()}.
+	 */
+	private volatile SampleRingBuffer buffer;
+
+	/**
+	 * Thread publishing the samples, unparked when a sample is buffered.
+	 */
+	private volatile Thread senderThread;
 
 	/**
 	 * Flag that determines if the module is running. This is set
 	 * on {@link #doStart()} and is cleared on {@link #doStop()} or
-	 * if an exception occurs while processing the {@code vmstat}
-	 * output.
+	 * if an exception occurs while reading {@code /proc}.
 	 */
 	private final AtomicBoolean running = new AtomicBoolean(false);
 
 	/**
 	 * Latch that is triggered when the module is no longer producing
-	 * output (either via explicit shutdown or error).
+	 * output (either via explicit shutdown or error), counted down
+	 * by both the sampling and the publishing thread.
 	 */
-	private final CountDownLatch shutdownLatch = new CountDownLatch(1);
+	private final CountDownLatch shutdownLatch = new CountDownLatch(2);
 
 	/**
-	 * Thread for executing and reading the output of {@code vmstat}.
+	 * Threads taking and publishing the samples.
 	 */
 	private final ExecutorService executorService =
-			Executors.newSingleThreadExecutor(new CustomizableThreadFactory("vmstat"));
+			Executors.newFixedThreadPool(2, new CustomizableThreadFactory("vmstat"));
 
 	/**
-	 * @see #vmStatCommand
+	 * @see #interval
 	 */
-	public String getVmStatCommand() {
-		return vmStatCommand;
+	public long getInterval() {
+		return interval;
 	}
 
 	/**
-	 * @see #vmStatCommand
+	 * @see #interval
 	 */
-	public void setVmStatCommand(String vmStatCommand) {
-		this.vmStatCommand = vmStatCommand;
+	public void setInterval(long interval) {
+		Assert.isTrue(interval > 0, "interval must be greater than 0");
+		this.interval = interval;
 	}
 
 	/**
-	 * Start the thread that executes and processes the {@code vmstat}
-	 * output. This has no effect if the module is already running.
+	 * @see #window
+	 */
+	public long getWindow() {
+		return window;
+	}
+
+	/**
+	 * @see #window
+	 */
+	public void setWindow(long window) {
+		Assert.isTrue(window >= 0, "window must not be negative");
+		this.window = window;
+	}
+
+	/**
+	 * @see #passthrough
+	 */
+	public boolean isPassthrough() {
+		return passthrough;
+	}
+
+	/**
+	 * @see #passthrough
+	 */
+	public void setPassthrough(boolean passthrough) {
+		this.passthrough = passthrough;
+	}
+
+	/**
+	 * @see #bufferSize
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @see #bufferSize
+	 */
+	public void setBufferSize(int bufferSize) {
+		Assert.isTrue(bufferSize > 0, "bufferSize must be greater than 0");
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * @see #overflowPolicy
+	 */
+	public SampleRingBuffer.OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * @see #overflowPolicy
+	 */
+	public void setOverflowPolicy(SampleRingBuffer.OverflowPolicy overflowPolicy) {
+		Assert.notNull(overflowPolicy, "overflowPolicy must not be null");
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * @return the number of samples dropped because the buffer was full
+	 */
+	public long getDroppedSamples() {
+		SampleRingBuffer buffer = this.buffer;
+		return buffer == null ? 0 : buffer.getDropped();
+	}
+
+	/**
+	 * @return the number of samples replaced by a newer one because the
+	 *         buffer was full
+	 */
+	public long getCoalescedSamples() {
+		SampleRingBuffer buffer = this.buffer;
+		return buffer == null ? 0 : buffer.getCoalesced();
+	}
+
+	/**
+	 * Start the threads that sample {@code /proc} and publish the
+	 * samples. This has no effect if the module is already running.
 	 *
 	 * @throws UnsupportedOperationException if this module is deployed
 	 *         on a non Linux operating system
@@ -142,15 +286,17 @@ public class VMStat extends MessageProducerSupport {
 
 		if(running.compareAndSet(false, true)) {
 			logger.info("Starting vmstat");
+			buffer = new SampleRingBuffer(getBufferSize(), VMStatSampler.FIELD_NAMES.length, getOverflowPolicy());
+			executorService.submit(new VMStatSender());
 			executorService.submit(new VMStatExecutor());
 			logger.info("Started vmstat");
 		}
 	}
 
 	/**
-	 * Stop the {@code vmstat} process and shut down the thread
-	 * processing its output. This has no effect if the module
-	 * is not running.
+	 * Shut down the sampling thread, and the publishing thread once it
+	 * has published the buffered samples. This has no effect if the
+	 * module is not running.
 	 */
 	@Override
 	protected void doStop() {
@@ -166,60 +312,51 @@ public class VMStat extends MessageProducerSupport {
 			}
 			finally {
 				executorService.shutdown();
-				logger.info("Stopped vmstat");
+				logger.info("Stopped vmstat; {} samples dropped, {} coalesced", getDroppedSamples(),
+						getCoalescedSamples());
 			}
 		}
 	}
 
 
 	/**
-	 * {@link Callable} that executes and processes {@code vmstat} output.
+	 * {@link Callable} that samples {@code /proc} at a fixed rate and
+	 * buffers each sample with the time it was taken. When it falls
+	 * behind, as when it blocks on a full buffer, the next sample is
+	 * taken one interval later instead of catching up. The files are
+	 * kept open and the sample array reused, so sampling allocates
+	 * nothing.
 	 */
 	public class VMStatExecutor implements Callable<Void> {
 
 		@Override
 		public Void call() throws Exception {
 			logger.debug("Starting vmstat loop");
-			ProcessBuilder builder = new ProcessBuilder();
-			builder.redirectErrorStream(true);
-			builder.command(getVmStatCommand().split("\\s"));
-
-			Process process = null;
-			String line = null;
+			VMStatSampler sampler = null;
+			long[] fields = new long[VMStatSampler.FIELD_NAMES.length];
 			try {
-				process = builder.start();
-
-				InputStreamReader in = new InputStreamReader(new BufferedInputStream(process.getInputStream()));
-				BufferedReader reader = new BufferedReader(in);
-
-				while (running.get() && (line = reader.readLine()) != null) {
-					TupleBuilder tupleBuilder = TupleBuilder.tuple();
-					StringTokenizer tokenizer = new StringTokenizer(line);
-
-					try {
-						tupleBuilder.put("waitingProcessCount", Integer.parseInt(tokenizer.nextToken()))
-								.put("sleepingProcessCount", Integer.parseInt(tokenizer.nextToken()))
-								.put("virtualMemoryUsage", Long.parseLong(tokenizer.nextToken()))
-								.put("freeMemory", Long.parseLong(tokenizer.nextToken()))
-								.put("bufferMemory", Long.parseLong(tokenizer.nextToken()))
-								.put("cacheMemory", Long.parseLong(tokenizer.nextToken()))
-								.put("swapIn", Long.parseLong(tokenizer.nextToken()))
-								.put("swapOut", Long.parseLong(tokenizer.nextToken()))
-								.put("bytesIn", Long.parseLong(tokenizer.nextToken()))
-								.put("bytesOut", Long.parseLong(tokenizer.nextToken()))
-								.put("interruptsPerSecond", Long.parseLong(tokenizer.nextToken()))
-								.put("contextSwitchesPerSecond", Long.parseLong(tokenizer.nextToken()))
-								.put("userCpu", Long.parseLong(tokenizer.nextToken()))
-								.put("kernelCpu", Long.parseLong(tokenizer.nextToken()))
-								.put("idleCpu", Long.parseLong(tokenizer.nextToken()));
+				sampler = new VMStatSampler();
+				long next = System.nanoTime();
+				while (running.get()) {
+					next += TimeUnit.MILLISECONDS.toNanos(getInterval());
+					long delay;
+					while (running.get() && (delay = next - System.nanoTime()) > 0) {
+						LockSupport.parkNanos(delay);
 					}
-					catch (Exception e) {
-						// most likely cause is parsing a header line; discard and continue
-						tupleBuilder = null;
+					if (!running.get()) {
+						break;
 					}
-
-					if (tupleBuilder != null) {
-						sendMessage(MessageBuilder.withPayload(tupleBuilder.build()).build());
+					sampler.sample(fields);
+					if (!buffer.offer(fields, System.currentTimeMillis())) {
+						break;
+					}
+					long now = System.nanoTime();
+					if (next - now < 0) {
+						next = now;
+					}
+					Thread sender = senderThread;
+					if (sender != null) {
+						LockSupport.unpark(sender);
 					}
 				}
 			}
@@ -227,17 +364,98 @@ public class VMStat extends MessageProducerSupport {
 				logger.error("Unhandled exception", e);
 				running.set(false);
 			}
+			catch (RuntimeException e) {
+				logger.error("Unhandled exception", e);
+				running.set(false);
+			}
 			finally {
-				if (process != null) {
-					process.destroy();
+				if (sampler != null) {
+					sampler.close();
 				}
 				shutdownLatch.countDown();
 				logger.debug("Stopping vmstat loop");
-				logger.trace("running: {}, line: {}", running, line);
+				logger.trace("running: {}", running);
+			}
+
+			return null;
+		}
+	}
+
+
+	/**
+	 * {@link Callable} that takes the samples from the buffer and
+	 * publishes each one, or adds it to the current window and
+	 * publishes the window's summary once a sample taken after the
+	 * window's end arrives. It keeps going until the module stops and
+	 * the buffer is empty.
+	 */
+	public class VMStatSender implements Callable<Void> {
+
+		@Override
+		public Void call() throws Exception {
+			logger.debug("Starting vmstat sender");
+			senderThread = Thread.currentThread();
+			long[] fields = new long[VMStatSampler.FIELD_NAMES.length];
+			long window = getWindow();
+			VMStatWindow summary = window > 0 ? new VMStatWindow(VMStatSampler.FIELD_NAMES) : null;
+			long windowEnd = 0;
+			try {
+				while (running.get() || !buffer.isEmpty()) {
+					long sampleTime = buffer.poll(fields);
+					if (sampleTime == SampleRingBuffer.NONE) {
+						LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(getInterval()));
+						continue;
+					}
+					if (summary == null || isPassthrough()) {
+						sendMessage(MessageBuilder.withPayload(toTuple(fields))
+								.setHeader(SAMPLE_TIME_HEADER, sampleTime)
+								.build());
+					}
+					if (summary != null) {
+						if (summary.getCount() == 0) {
+							summary.reset(sampleTime);
+							windowEnd = sampleTime + window;
+						}
+						else if (sampleTime - windowEnd >= 0) {
+							sendMessage(MessageBuilder.withPayload(summary.summarize(windowEnd)).build());
+							summary.reset(windowEnd);
+							windowEnd += window;
+							if (sampleTime - windowEnd >= 0) {
+								// no samples for a whole window; start over from this one
+								summary.reset(sampleTime);
+								windowEnd = sampleTime + window;
+							}
+						}
+						summary.add(fields);
+					}
+				}
+			}
+			catch (RuntimeException e) {
+				logger.error("Unhandled exception", e);
+				running.set(false);
+				// a sampler blocked on the full buffer is interrupted
+				executorService.shutdownNow();
+			}
+			finally {
+				senderThread = null;
+				shutdownLatch.countDown();
+				logger.debug("Stopping vmstat sender");
 			}
 
 			return null;
 		}
+
+		private Tuple toTuple(long[] fields) {
+			TupleBuilder tupleBuilder = TupleBuilder.tuple()
+					.put(VMStatSampler.FIELD_NAMES[VMStatSampler.WAITING_PROCESS_COUNT],
+							(int) fields[VMStatSampler.WAITING_PROCESS_COUNT])
+					.put(VMStatSampler.FIELD_NAMES[VMStatSampler.SLEEPING_PROCESS_COUNT],
+							(int) fields[VMStatSampler.SLEEPING_PROCESS_COUNT]);
+			for (int i = VMStatSampler.VIRTUAL_MEMORY_USAGE; i < fields.length; i++) {
+				tupleBuilder.put(VMStatSampler.FIELD_NAMES[i], fields[i]);
+			}
+			return tupleBuilder.build();
+		}
 	}
 
 }
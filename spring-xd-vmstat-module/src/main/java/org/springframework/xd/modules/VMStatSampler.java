@@ -0,0 +1,235 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.modules;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Computes the figures reported by {@code vmstat} from {@code /proc/stat},
+ * {@code /proc/meminfo} and {@code /proc/vmstat}. Each call to {@link #sample(long[])}
+ * rereads the files and fills an array indexed by the field constants of this class:
+ * process counts and memory sizes (in kB) as read, swap and block I/O in kB per second,
+ * interrupts and context switches per second, and CPU time as a percentage, all computed
+ * from the difference to the previous sample.
+ */
+public class VMStatSampler implements Closeable {
+
+	public static final int WAITING_PROCESS_COUNT = 0;
+
+	public static final int SLEEPING_PROCESS_COUNT = 1;
+
+	public static final int VIRTUAL_MEMORY_USAGE = 2;
+
+	public static final int FREE_MEMORY = 3;
+
+	public static final int BUFFER_MEMORY = 4;
+
+	public static final int CACHE_MEMORY = 5;
+
+	public static final int SWAP_IN = 6;
+
+	public static final int SWAP_OUT = 7;
+
+	public static final int BYTES_IN = 8;
+
+	public static final int BYTES_OUT = 9;
+
+	public static final int INTERRUPTS_PER_SECOND = 10;
+
+	public static final int CONTEXT_SWITCHES_PER_SECOND = 11;
+
+	public static final int USER_CPU = 12;
+
+	public static final int KERNEL_CPU = 13;
+
+	public static final int IDLE_CPU = 14;
+
+	/**
+	 * The tuple field names, indexed by the field constants.
+	 */
+	public static final String[] FIELD_NAMES = {"waitingProcessCount", "sleepingProcessCount",
+			"virtualMemoryUsage", "freeMemory", "bufferMemory", "cacheMemory", "swapIn", "swapOut", "bytesIn",
+			"bytesOut", "interruptsPerSecond", "contextSwitchesPerSecond", "userCpu", "kernelCpu", "idleCpu"};
+
+	/**
+	 * Size of the memory pages counted in {@code /proc/vmstat}, in kB.
+	 */
+	private static final int PAGE_SIZE_KB = 4;
+
+	private static final byte[] CPU = ProcFile.key("cpu ");
+
+	private static final byte[] INTR = ProcFile.key("intr ");
+
+	private static final byte[] CTXT = ProcFile.key("ctxt ");
+
+	private static final byte[] PROCS_RUNNING = ProcFile.key("procs_running ");
+
+	private static final byte[] PROCS_BLOCKED = ProcFile.key("procs_blocked ");
+
+	private static final byte[] MEM_FREE = ProcFile.key("MemFree:");
+
+	private static final byte[] BUFFERS = ProcFile.key("Buffers:");
+
+	private static final byte[] CACHED = ProcFile.key("Cached:");
+
+	private static final byte[] SRECLAIMABLE = ProcFile.key("SReclaimable:");
+
+	private static final byte[] SWAP_TOTAL = ProcFile.key("SwapTotal:");
+
+	private static final byte[] SWAP_FREE = ProcFile.key("SwapFree:");
+
+	private static final byte[] PSWPIN = ProcFile.key("pswpin ");
+
+	private static final byte[] PSWPOUT = ProcFile.key("pswpout ");
+
+	private static final byte[] PGPGIN = ProcFile.key("pgpgin ");
+
+	private static final byte[] PGPGOUT = ProcFile.key("pgpgout ");
+
+	// indexes of the cumulative counters kept between samples
+	private static final int CPU_USER = 0;
+
+	private static final int CPU_SYSTEM = 1;
+
+	private static final int CPU_IDLE = 2;
+
+	private static final int CPU_TOTAL = 3;
+
+	private static final int INTERRUPTS = 4;
+
+	private static final int CONTEXT_SWITCHES = 5;
+
+	private static final int PAGES_SWAPPED_IN = 6;
+
+	private static final int PAGES_SWAPPED_OUT = 7;
+
+	private static final int KB_IN = 8;
+
+	private static final int KB_OUT = 9;
+
+	private static final int COUNTERS = 10;
+
+	private final ProcFile stat;
+
+	private final ProcFile meminfo;
+
+	private final ProcFile vmstat;
+
+	private final long[] previous = new long[COUNTERS];
+
+	private final long[] current = new long[COUNTERS];
+
+	private long previousTime;
+
+	public VMStatSampler() throws IOException {
+		this("/proc");
+	}
+
+	/**
+	 * @param procDirectory the directory holding {@code stat}, {@code meminfo} and {@code vmstat}
+	 */
+	public VMStatSampler(String procDirectory) throws IOException {
+		this.stat = new ProcFile(procDirectory + "/stat");
+		this.meminfo = new ProcFile(procDirectory + "/meminfo");
+		this.vmstat = new ProcFile(procDirectory + "/vmstat");
+		readCounters(previous);
+		previousTime = System.nanoTime();
+	}
+
+	/**
+	 * Take a sample, computing rates and percentages over the time since the previous sample
+	 * (or since this sampler was created).
+	 *
+	 * @param fields the array to fill, of at least {@code FIELD_NAMES.length} elements
+	 */
+	public void sample(long[] fields) throws IOException {
+		readCounters(current);
+		long now = System.nanoTime();
+		double seconds = Math.max(now - previousTime, 1) / 1e9;
+
+		fields[WAITING_PROCESS_COUNT] = stat.valueOf(PROCS_RUNNING);
+		fields[SLEEPING_PROCESS_COUNT] = stat.valueOf(PROCS_BLOCKED);
+
+		meminfo.read();
+		fields[VIRTUAL_MEMORY_USAGE] = meminfo.valueOf(SWAP_TOTAL) - meminfo.valueOf(SWAP_FREE);
+		fields[FREE_MEMORY] = meminfo.valueOf(MEM_FREE);
+		fields[BUFFER_MEMORY] = meminfo.valueOf(BUFFERS);
+		fields[CACHE_MEMORY] = meminfo.valueOf(CACHED)
+				+ (meminfo.find(SRECLAIMABLE) < 0 ? 0 : meminfo.valueOf(SRECLAIMABLE));
+
+		fields[SWAP_IN] = perSecond(PAGES_SWAPPED_IN, seconds) * PAGE_SIZE_KB;
+		fields[SWAP_OUT] = perSecond(PAGES_SWAPPED_OUT, seconds) * PAGE_SIZE_KB;
+		fields[BYTES_IN] = perSecond(KB_IN, seconds);
+		fields[BYTES_OUT] = perSecond(KB_OUT, seconds);
+		fields[INTERRUPTS_PER_SECOND] = perSecond(INTERRUPTS, seconds);
+		fields[CONTEXT_SWITCHES_PER_SECOND] = perSecond(CONTEXT_SWITCHES, seconds);
+
+		long total = Math.max(current[CPU_TOTAL] - previous[CPU_TOTAL], 1);
+		fields[USER_CPU] = percentage(current[CPU_USER] - previous[CPU_USER], total);
+		fields[KERNEL_CPU] = percentage(current[CPU_SYSTEM] - previous[CPU_SYSTEM], total);
+		fields[IDLE_CPU] = percentage(current[CPU_IDLE] - previous[CPU_IDLE], total);
+
+		System.arraycopy(current, 0, previous, 0, COUNTERS);
+		previousTime = now;
+	}
+
+	/**
+	 * Read the cumulative counters; leaves {@code /proc/stat} read for the process counts.
+	 */
+	private void readCounters(long[] counters) throws IOException {
+		stat.read();
+		// cpu  user nice system idle iowait irq softirq steal
+		int offset = stat.find(CPU);
+		long user = stat.parseLong(offset);
+		long nice = stat.parseLong(stat.getPosition());
+		long system = stat.parseLong(stat.getPosition());
+		long idle = stat.parseLong(stat.getPosition());
+		long iowait = stat.parseLong(stat.getPosition());
+		long irq = stat.parseLong(stat.getPosition());
+		long softirq = stat.parseLong(stat.getPosition());
+		long steal = stat.parseLong(stat.getPosition());
+		counters[CPU_USER] = user + nice;
+		counters[CPU_SYSTEM] = system + irq + softirq;
+		counters[CPU_IDLE] = idle;
+		counters[CPU_TOTAL] = user + nice + system + idle + iowait + irq + softirq + steal;
+		counters[INTERRUPTS] = stat.valueOf(INTR);
+		counters[CONTEXT_SWITCHES] = stat.valueOf(CTXT);
+
+		vmstat.read();
+		counters[PAGES_SWAPPED_IN] = vmstat.valueOf(PSWPIN);
+		counters[PAGES_SWAPPED_OUT] = vmstat.valueOf(PSWPOUT);
+		counters[KB_IN] = vmstat.valueOf(PGPGIN);
+		counters[KB_OUT] = vmstat.valueOf(PGPGOUT);
+	}
+
+	private long perSecond(int counter, double seconds) {
+		return Math.round((current[counter] - previous[counter]) / seconds);
+	}
+
+	private static long percentage(long part, long total) {
+		return Math.round(part * 100.0 / total);
+	}
+
+	@Override
+	public void close() throws IOException {
+		stat.close();
+		meminfo.close();
+		vmstat.close();
+	}
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.modules;
+
+import java.util.Arrays;
+
+import org.springframework.util.Assert;
+import org.springframework.xd.tuple.Tuple;
+import org.springframework.xd.tuple.TupleBuilder;
+
+/**
+ * Aggregates the samples of one window into a summary: for each field its minimum, maximum,
+ * mean and 50th, 90th and 99th percentile. State is fixed in size whatever the number of
+ * samples: running minimum, maximum and sum per field, plus a uniform random sample of at most
+ * {@code reservoirSize} samples from which the percentiles are estimated. A reservoir holds
+ * whole samples, so the percentiles of different fields come from the same points in time.
+ * <p>
+ * The summary has, for a field {@code userCpu}, the fields {@code userCpuMin},
+ * {@code userCpuMax}, {@code userCpuMean}, {@code userCpuP50}, {@code userCpuP90} and
+ * {@code userCpuP99}, along with {@code sampleCount}, {@code windowStart} and
+ * {@code windowEnd} (in milliseconds since the epoch). Not thread safe.
+ */
+public class VMStatWindow {
+
+	/**
+	 * The default number of samples kept for percentile estimates.
+	 */
+	public static final int DEFAULT_RESERVOIR_SIZE = 256;
+
+	private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+	private static final String[] SUFFIXES = {"Min", "Max", "Mean", "P50", "P90", "P99"};
+
+	private final String[] fieldNames;
+
+	/**
+	 * Summary field names, {@code SUFFIXES.length} per field.
+	 */
+	private final String[] summaryNames;
+
+	private final long[] min;
+
+	private final long[] max;
+
+	private final long[] sum;
+
+	/**
+	 * The reservoir, one row per field.
+	 */
+	private final long[][] reservoir;
+
+	private final long[] sortBuffer;
+
+	private final int reservoirSize;
+
+	private int count;
+
+	private long random = System.nanoTime() | 1;
+
+	private long windowStart;
+
+	/**
+	 * @param fieldNames the names of the fields of each sample
+	 */
+	public VMStatWindow(String[] fieldNames) {
+		this(fieldNames, DEFAULT_RESERVOIR_SIZE);
+	}
+
+	/**
+	 * @param fieldNames the names of the fields of each sample
+	 * @param reservoirSize the number of samples kept for percentile estimates
+	 */
+	public VMStatWindow(String[] fieldNames, int reservoirSize) {
+		Assert.notEmpty(fieldNames, "fieldNames must not be empty");
+		Assert.isTrue(reservoirSize > 0, "reservoirSize must be greater than 0");
+		this.fieldNames = fieldNames.clone();
+		this.summaryNames = new String[fieldNames.length * SUFFIXES.length];
+		for (int i = 0; i < fieldNames.length; i++) {
+			for (int j = 0; j < SUFFIXES.length; j++) {
+				summaryNames[i * SUFFIXES.length + j] = fieldNames[i] + SUFFIXES[j];
+			}
+		}
+		this.min = new long[fieldNames.length];
+		this.max = new long[fieldNames.length];
+		this.sum = new long[fieldNames.length];
+		this.reservoir = new long[fieldNames.length][reservoirSize];
+		this.sortBuffer = new long[reservoirSize];
+		this.reservoirSize = reservoirSize;
+		reset(System.currentTimeMillis());
+	}
+
+	/**
+	 * Start a new, empty window.
+	 *
+	 * @param windowStart the start of the window in milliseconds since the epoch
+	 */
+	public void reset(long windowStart) {
+		this.windowStart = windowStart;
+		this.count = 0;
+		Arrays.fill(min, Long.MAX_VALUE);
+		Arrays.fill(max, Long.MIN_VALUE);
+		Arrays.fill(sum, 0);
+	}
+
+	/**
+	 * Add a sample to the window.
+	 *
+	 * @param fields the sample, with a value for each field name
+	 */
+	public void add(long[] fields) {
+		// Algorithm R: the n-th sample replaces a random slot with probability size / n
+		int slot = count < reservoirSize ? count : nextInt(count + 1);
+		for (int i = 0; i < fieldNames.length; i++) {
+			long value = fields[i];
+			if (value < min[i]) {
+				min[i] = value;
+			}
+			if (value > max[i]) {
+				max[i] = value;
+			}
+			sum[i] += value;
+			if (slot < reservoirSize) {
+				reservoir[i][slot] = value;
+			}
+		}
+		count++;
+	}
+
+	/**
+	 * @return the number of samples in the window
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the start of the window in milliseconds since the epoch
+	 */
+	public long getWindowStart() {
+		return windowStart;
+	}
+
+	/**
+	 * Summarize the window; it should hold at least one sample.
+	 *
+	 * @param windowEnd the end of the window in milliseconds since the epoch
+	 */
+	public Tuple summarize(long windowEnd) {
+		TupleBuilder builder = TupleBuilder.tuple();
+		int samples = Math.min(count, reservoirSize);
+		for (int i = 0; i < fieldNames.length; i++) {
+			int name = i * SUFFIXES.length;
+			builder.put(summaryNames[name], min[i])
+					.put(summaryNames[name + 1], max[i])
+					.put(summaryNames[name + 2], count == 0 ? 0.0 : (double) sum[i] / count);
+			System.arraycopy(reservoir[i], 0, sortBuffer, 0, samples);
+			Arrays.sort(sortBuffer, 0, samples);
+			for (int j = 0; j < PERCENTILES.length; j++) {
+				builder.put(summaryNames[name + 3 + j], percentile(samples, PERCENTILES[j]));
+			}
+		}
+		return builder.put("sampleCount", count)
+				.put("windowStart", windowStart)
+				.put("windowEnd", windowEnd)
+				.build();
+	}
+
+	/**
+	 * @return the nearest-rank percentile of the first {@code samples} sorted values
+	 */
+	private long percentile(int samples, double percentile) {
+		if (samples == 0) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(percentile * samples);
+		return sortBuffer[Math.max(rank, 1) - 1];
+	}
+
+	/**
+	 * @return a pseudo random number from 0 (inclusive) to {@code bound} (exclusive)
+	 */
+	private int nextInt(int bound) {
+		// xorshift64
+		random ^= random << 13;
+		random ^= random >>> 7;
+		random ^= random << 17;
+		return (int) ((random >>> 1) % bound);
+	}
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.xd.modules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import org.springframework.xd.modules.SampleRingBuffer.OverflowPolicy;
+
+/**
+ * Tests for {@link SampleRingBuffer}: the overflow policies on their own, and an offering and a
+ * polling thread racing on a small buffer, where every sample polled must be whole and in order
+ * and every sample offered must be either polled or counted as dropped or coalesced.
+ */
+public class SampleRingBufferTests {
+
+	private static final int WIDTH = 4;
+
+	private static final long SAMPLES = 200000;
+
+	@Test
+	public void testCapacityIsRoundedUpToPowerOfTwo() {
+		assertEquals(16, new SampleRingBuffer(10, WIDTH, OverflowPolicy.BLOCK).getCapacity());
+		assertEquals(1, new SampleRingBuffer(1, WIDTH, OverflowPolicy.BLOCK).getCapacity());
+	}
+
+	@Test
+	public void testDropOldestDiscardsOldestSamples() {
+		SampleRingBuffer buffer = new SampleRingBuffer(4, WIDTH, OverflowPolicy.DROP_OLDEST);
+		for (long i = 1; i <= 6; i++) {
+			assertTrue(buffer.offer(sample(i), i));
+		}
+		assertEquals(2, buffer.getDropped());
+		assertEquals(0, buffer.getCoalesced());
+		assertPolled(buffer, 3, 4, 5, 6);
+	}
+
+	@Test
+	public void testCoalesceReplacesOverflowSample() {
+		SampleRingBuffer buffer = new SampleRingBuffer(4, WIDTH, OverflowPolicy.COALESCE);
+		for (long i = 1; i <= 7; i++) {
+			assertTrue(buffer.offer(sample(i), i));
+		}
+		// 5 and 6 were replaced in the overflow slot by 7
+		assertEquals(2, buffer.getCoalesced());
+		assertEquals(0, buffer.getDropped());
+		assertPolled(buffer, 1, 2, 3, 4, 7);
+	}
+
+	@Test
+	public void testCoalesceKeepsOrderWhileOverflowSampleWaits() {
+		SampleRingBuffer buffer = new SampleRingBuffer(2, WIDTH, OverflowPolicy.COALESCE);
+		for (long i = 1; i <= 3; i++) {
+			buffer.offer(sample(i), i);
+		}
+		long[] sample = new long[WIDTH];
+		assertEquals(1, buffer.poll(sample));
+		// there is room in the ring again, but 4 must not go ahead of 3, so it replaces it
+		buffer.offer(sample(4), 4);
+		assertEquals(1, buffer.getCoalesced());
+		assertPolled(buffer, 2, 4);
+	}
+
+	@Test
+	public void testBlockWaitsForRoom() throws Exception {
+		final SampleRingBuffer buffer = new SampleRingBuffer(2, WIDTH, OverflowPolicy.BLOCK);
+		buffer.offer(sample(1), 1);
+		buffer.offer(sample(2), 2);
+		final AtomicBoolean offered = new AtomicBoolean();
+		Thread producer = new Thread() {
+
+			@Override
+			public void run() {
+				offered.set(buffer.offer(sample(3), 3));
+			}
+		};
+		producer.start();
+		producer.join(100);
+		assertTrue("the offer did not wait for room", producer.isAlive());
+		assertEquals(1, buffer.poll(new long[WIDTH]));
+		producer.join(5000);
+		assertTrue(offered.get());
+		assertPolled(buffer, 2, 3);
+	}
+
+	@Test
+	public void testBlockReturnsFalseWhenInterrupted() throws Exception {
+		final SampleRingBuffer buffer = new SampleRingBuffer(1, WIDTH, OverflowPolicy.BLOCK);
+		buffer.offer(sample(1), 1);
+		final AtomicBoolean offered = new AtomicBoolean(true);
+		Thread producer = new Thread() {
+
+			@Override
+			public void run() {
+				offered.set(buffer.offer(sample(2), 2));
+			}
+		};
+		producer.start();
+		producer.interrupt();
+		producer.join(5000);
+		assertFalse(producer.isAlive());
+		assertFalse(offered.get());
+		assertPolled(buffer, 1);
+	}
+
+	@Test
+	public void testConcurrentDropOldest() throws Exception {
+		Result result = race(OverflowPolicy.DROP_OLDEST);
+		assertEquals(SAMPLES, result.polled + result.buffer.getDropped());
+		assertEquals(0, result.buffer.getCoalesced());
+		assertEquals(SAMPLES, result.last);
+	}
+
+	@Test
+	public void testConcurrentCoalesce() throws Exception {
+		Result result = race(OverflowPolicy.COALESCE);
+		assertEquals(SAMPLES, result.polled + result.buffer.getCoalesced());
+		assertEquals(0, result.buffer.getDropped());
+		assertEquals(SAMPLES, result.last);
+	}
+
+	@Test
+	public void testConcurrentBlock() throws Exception {
+		Result result = race(OverflowPolicy.BLOCK);
+		assertEquals(SAMPLES, result.polled);
+		assertEquals(0, result.buffer.getDropped());
+		assertEquals(0, result.buffer.getCoalesced());
+		assertEquals(SAMPLES, result.last);
+	}
+
+	/**
+	 * Offer {@link #SAMPLES} samples from one thread, numbered from 1 with every value and the
+	 * capture time equal to the number, while this thread polls them, checking that each sample
+	 * is whole and newer than the last.
+	 */
+	private static Result race(OverflowPolicy policy) throws Exception {
+		final SampleRingBuffer buffer = new SampleRingBuffer(16, WIDTH, policy);
+		Thread producer = new Thread() {
+
+			@Override
+			public void run() {
+				long[] sample = new long[WIDTH];
+				for (long i = 1; i <= SAMPLES; i++) {
+					fill(sample, i);
+					buffer.offer(sample, i);
+				}
+			}
+		};
+		producer.start();
+		Result result = new Result(buffer);
+		long[] sample = new long[WIDTH];
+		while (true) {
+			long timestamp = buffer.poll(sample);
+			if (timestamp == SampleRingBuffer.NONE) {
+				if (!producer.isAlive() && buffer.isEmpty()) {
+					break;
+				}
+				continue;
+			}
+			for (long value : sample) {
+				assertEquals("torn sample", timestamp, value);
+			}
+			assertTrue("sample " + timestamp + " polled after " + result.last, timestamp > result.last);
+			result.last = timestamp;
+			result.polled++;
+		}
+		producer.join();
+		return result;
+	}
+
+	private static void assertPolled(SampleRingBuffer buffer, long... expected) {
+		long[] sample = new long[WIDTH];
+		for (long value : expected) {
+			assertEquals(value, buffer.poll(sample));
+			assertEquals(value, sample[0]);
+			assertEquals(value, sample[WIDTH - 1]);
+		}
+		assertEquals(SampleRingBuffer.NONE, buffer.poll(sample));
+		assertTrue(buffer.isEmpty());
+	}
+
+	private static long[] sample(long value) {
+		long[] sample = new long[WIDTH];
+		fill(sample, value);
+		return sample;
+	}
+
+	private static void fill(long[] sample, long value) {
+		for (int i = 0; i < sample.length; i++) {
+			sample[i] = value;
+		}
+	}
+
+	private static class Result {
+
+		private final SampleRingBuffer buffer;
+
+		private long polled;
+
+		private long last;
+
+		private Result(SampleRingBuffer buffer) {
+			this.buffer = buffer;
+		}
+	}
+
+}